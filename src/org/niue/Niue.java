@@ -28,6 +28,7 @@ package org.niue;
 import java.io.PrintStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
@@ -63,7 +64,21 @@ public final class Niue {
 
     public void run (Vm vm, InputStream in, PrintStream out) 
 	throws VmException {
-	Reader parser = new Reader (in);
+	run (vm, new Reader (in), out);
+    }
+
+    public void run (Vm vm, java.io.Reader in, PrintStream out) 
+	throws VmException {
+	run (vm, new Reader (in), out);
+    }
+
+    public void run (Vm vm, ByteBuffer in, PrintStream out) 
+	throws VmException {
+	run (vm, new Reader (in), out);
+    }
+
+    private void run (Vm vm, Reader parser, PrintStream out) 
+	throws VmException {
 	vm.setOutput (out);
 	String token = null;
 	try {
@@ -26,45 +26,77 @@
 package org.niue;
 
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 // Parses an input stream into tokens of strings.  Space is the
 // default delimitter.  Knows to parse quoted strings and comments
 // enclosed in ( and ).
 
+// Input is decoded as UTF-8 into a char[] window, which is refilled
+// a block at a time.  A token is scanned as a range of the window and
+// only turned into a String once it is complete.  The window grows if
+// a single token does not fit in it.  A Reader over a ByteBuffer, 
+// such as a memory-mapped file, decodes straight from the buffer. 
+
 public final class Reader {
     public Reader (InputStream in) {
+        this (new InputStreamReader (in, Charset.forName ("UTF-8")));
+    } 
+
+    public Reader (java.io.Reader in) {
         this.in = in;
     } 
 
+    public Reader (ByteBuffer in) {
+	bytes = in;
+	decoder = Charset.forName ("UTF-8").newDecoder ()
+	    .onMalformedInput (CodingErrorAction.REPLACE)
+	    .onUnmappableCharacter (CodingErrorAction.REPLACE);
+    }
+
+    // Returns the next token, or null at the end of input.  Empty
+    // tokens between consecutive spaces are skipped. 
+
     public String getToken () throws IOException, ReaderException {
-        StringBuffer ret = new StringBuffer ();
-        int i = 0;
 	int inComment = 0;
-        while ((i = in.read()) != -1) {
-            char c = (char)i;
-	    if (inComment < 0) {
-		throw new ReaderException ("Comment not properly terminated.");
-	    }
+	StringBuilder pending = null;
+	start = pos;
+	while (pos < limit || fill ()) {
+	    char c = buf[pos++];
 	    if (inComment > 0) {
 		if (c == ')') --inComment;
 		if (c == '(') ++inComment;
+		start = pos;
 		continue;
 	    }	
             if (Character.isWhitespace (c)) {
-                return ret.toString ();
+		if (pos - 1 > start || pending != null) {
+		    return text (pending, pos - 1);
+		}
+		start = pos;
 	    } else if (c == '\"') {
 		return readString (true);
 	    } else if (c == '\'') {
 		return readString (false); // quoted string
 	    } else if (c == '(') {
+		// A comment inside a token is dropped, but the 
+		// characters on either side of it are kept. 
+		if (pos - 1 > start) {
+		    if (pending == null) pending = new StringBuilder ();
+		    pending.append (buf, start, pos - 1 - start);
+		}
 		++inComment;
-            } else {
-                ret.append (c);
-            }
+		start = pos;
+	    }
         } 
-	if (ret.length () > 0) {
-	    return ret.toString ();
+	if (pos > start || (pending != null && pending.length () > 0)) {
+	    return text (pending, pos);
 	} else {
 	    return null;
 	}
@@ -72,34 +104,89 @@ public final class Reader {
 
     private String readString (boolean isNormal) 
 	throws IOException, ReaderException {
-	int i = 0;
-	char prev = 0;
-	StringBuffer ret = new StringBuffer ("\"");
-	boolean done = false;
-        while ((i = in.read()) != -1) {
-            char c = (char)i;
-	    if (isNormal) {
-		if (c == '\"') {
-		    if (prev != '\\') {
-			done = true;
-		    }
-		}
-	    } else {
-		if (Character.isWhitespace (c)) {
-		    done = true;
-		}
+	start = pos;
+	while (pos < limit || fill ()) {
+	    char c = buf[pos];
+	    boolean done = isNormal ? (c == '\"') 
+		: Character.isWhitespace (c);
+	    if (done) {
+		StringBuilder ret = new StringBuilder (pos - start + 2);
+		ret.append ('\"');
+		ret.append (buf, start, pos - start);
+		ret.append ('\"');
+		++pos;
+		return ret.toString ();
 	    }
-	    if (done) break;
-	    ret.append (c);
-	    if (!isNormal) prev = c;
+	    ++pos;
 	}
-	if (done) {
-	    ret.append ("\"");
-	    return ret.toString ();
-	} else {	    
-	    throw new ReaderException ("String not properly terminated.");
+	throw new ReaderException ("String not properly terminated.");
+    }
+
+    // Returns the token that ends at `end', prefixed by the part 
+    // before a comment, if any. 
+
+    private String text (StringBuilder pending, int end) {
+	if (pending == null) {
+	    return new String (buf, start, end - start);
+	}
+	pending.append (buf, start, end - start);
+	return pending.toString ();
+    }
+
+    // Reads the next block of input into the window.  The part of 
+    // the window from `start' is the token being scanned, so it is 
+    // moved to the front, or the window is grown if the token already 
+    // fills it.  Returns false at the end of input. 
+
+    private boolean fill () throws IOException {
+	if (eof) return false;
+	int keep = limit - start;
+	if (keep == buf.length) {
+	    char[] b = new char[buf.length * 2];
+	    System.arraycopy (buf, start, b, 0, keep);
+	    buf = b;
+	} else if (start > 0) {
+	    System.arraycopy (buf, start, buf, 0, keep);
+	}
+	pos -= start;
+	start = 0;
+	limit = keep;
+	int n = (bytes != null) ? decode () 
+	    : in.read (buf, limit, buf.length - limit);
+	if (n < 0) {
+	    eof = true;
+	    return false;
+	}
+	limit += n;
+	return true;
+    }
+
+    // Decodes the next block of `bytes' into the free part of the 
+    // window.  Returns the number of chars decoded, or -1 if all the
+    // input has been consumed. 
+
+    private int decode () {
+	while (true) {
+	    CharBuffer out = CharBuffer.wrap (buf, limit, buf.length - limit);
+	    decoder.decode (bytes, out, true);
+	    int n = out.position () - limit;
+	    if (n > 0) return n;
+	    if (!bytes.hasRemaining ()) return -1;
+	    // No room for a surrogate pair at the end of the window. 
+	    char[] b = new char[buf.length * 2];
+	    System.arraycopy (buf, 0, b, 0, limit);
+	    buf = b;
 	}
     }
 
-    private InputStream in;
+    private java.io.Reader in = null;
+    private ByteBuffer bytes = null;
+    private CharsetDecoder decoder = null;
+    private char[] buf = new char[BUFFER_SIZE];
+    private int start = 0;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    private static final int BUFFER_SIZE = 8192;
 }
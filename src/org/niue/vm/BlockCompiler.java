@@ -0,0 +1,527 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.niue.vm.operation.If;
+import org.niue.vm.operation.Loop;
+import org.niue.vm.operation.Run;
+import org.niue.vm.operation.DefVar;
+import org.niue.vm.operation.Forget;
+import org.niue.vm.operation.Eval;
+import org.niue.vm.operation.Load;
+
+// Translates the byte codes of a hot code block into a JVM class that
+// extends CompiledBlock.  Each byte code becomes a direct call into
+// the virtual machine or to the operation the word was resolved to, 
+// so that HotSpot can profile, inline and optimize every call site of 
+// the block on its own.  
+// Only straight-line blocks are compiled.  A block that runs other
+// blocks, either through a word or through one of the control words
+// like `when', `times' or `!', is left to the interpreter, as are 
+// blocks that call operations added by the embedding application.  
+// Words are resolved when the block is compiled.  Operations that can 
+// change the dictionary are followed by a check that returns to the 
+// interpreter if it has changed.  
+// The class is defined as a hidden class when the JVM supports it, 
+// and with a class loader of its own otherwise.  The generated code 
+// uses only public and protected members for that reason. 
+// Compilation can be turned off by setting the system property 
+// `niue.jit' to false.  `niue.jit.threshold' is the number of times a
+// block is run before it is compiled. 
+
+final class BlockCompiler {
+
+    // Compiles `block' against the dictionary of `vm', which is at 
+    // `version'.  Returns null if the block cannot be compiled.  The 
+    // failure is recorded on the block, so that it is not tried again
+    // against the same dictionary, or at all if the generated class 
+    // could not be defined.  See CodeBlock.uncompilable. 
+
+    static CompiledBlock compile (CodeBlock block, Vm vm, int version) {
+	ByteCodes byteCodes = block.getByteCodes ();
+	int count = byteCodes.size ();
+	if (count == 0 || count > MAX_BYTE_CODES || block.hasNewStack ()) {
+	    block.uncompilable = version;
+	    return null;
+	}
+	BlockCompiler compiler = new BlockCompiler (vm);
+	try {
+	    for (int i = 0; i < count; ++i) {
+		if (!compiler.compile (byteCodes.at (i), i, count)) {
+		    block.uncompilable = version;
+		    return null;
+		}
+	    }
+	    Class<?> c = define (compiler.toClassFile ());
+	    CompiledBlock code = (CompiledBlock) c.getConstructor ().newInstance ();
+	    IVmOperation[] operations = 
+		new IVmOperation[compiler.operations.size ()];
+	    VarSlot[] variables = new VarSlot[compiler.variables.size ()];
+	    code.init (version, compiler.operations.toArray (operations),
+		       compiler.variables.toArray (variables));
+	    return code;
+	} catch (IOException ex) {
+	    block.uncompilable = -1;
+	    return null;
+	} catch (ReflectiveOperationException ex) {
+	    block.uncompilable = -1;
+	    return null;
+	} catch (LinkageError err) {
+	    block.uncompilable = -1;
+	    return null;
+	}
+    }
+
+    private BlockCompiler (Vm vm) {
+	this.vm = vm;
+    }
+
+    // Generates the code for the byte code at `index'. 
+
+    private boolean compile (ByteCode bc, int index, int count) 
+	throws IOException {
+	switch (bc.type) {
+	case INTEGER:
+	    return push (bc.code, "pushInteger");
+	case BOOLEAN:
+	    return push (bc.code, "pushBoolean");
+	case STRING:
+	    return push (bc.code, "pushString");
+	case DOUBLE:
+	    return push (bc.value, CONSTANT_DOUBLE, "pushDouble", "(D)V");
+	case LONG:
+	    return push (bc.value, CONSTANT_LONG, "pushLong", "(J)V");
+	case BIGINTEGER:
+	    code.write (ALOAD_1);
+	    pushInt (bc.code);
+	    code.write (GETSTATIC);
+	    code.writeShort (fieldRef (TYPE, bc.type.name (), 
+					"L" + TYPE + ";"));
+	    code.write (INVOKEVIRTUAL);
+	    code.writeShort (methodRef (VM, "pushNumber", 
+					 "(IL" + TYPE + ";)V", false));
+	    return true;
+	case OPERATION:
+	    if (vm.isShadowed (bc.code)) {
+		return word (DefaultWords.getSymbol (bc.code), index, count);
+	    }
+	    return operation (DefaultWords.getOperation (bc.code), index, 
+			      count);
+	case WORD:
+	    return word (bc.code, index, count);
+	case FUSED:
+	    // The fused byte codes that follow are compiled instead. 
+	    return true;
+	}
+	return false;
+    }
+
+    // Generates a call to a Vm method that pushes `value'. 
+
+    private boolean push (int value, String method) throws IOException {
+	code.write (ALOAD_1);
+	pushInt (value);
+	code.write (INVOKEVIRTUAL);
+	code.writeShort (methodRef (VM, method, "(I)V", false));
+	return true;
+    }
+
+    // Generates a call to a Vm method that pushes a 64-bit constant. 
+
+    private boolean push (long value, int tag, String method, 
+			  String type) throws IOException {
+	int i = constant (tag + ":" + value, tag, value);
+	code.write (ALOAD_1);
+	code.write (LDC2_W);
+	code.writeShort (i);
+	code.write (INVOKEVIRTUAL);
+	code.writeShort (methodRef (VM, method, type, false));
+	return true;
+    }
+
+    // Generates the code for a word, as it is resolved now. 
+
+    private boolean word (int id, int index, int count) 
+	throws IOException {
+	VarSlot var = vm.getSlot (id);
+	if (var != null) {
+	    if (var.get ().getType () == ByteCode.Type.BLOCK) {
+		return false;
+	    }
+	    code.write (ALOAD_1);
+	    code.write (ALOAD_0);
+	    pushInt (variables.size ());
+	    code.write (INVOKEVIRTUAL);
+	    code.writeShort (methodRef (COMPILED_BLOCK, "variable", 
+					 "(I)L" + ELEMENT + ";", false));
+	    code.write (INVOKEVIRTUAL);
+	    code.writeShort (methodRef (VM, "push", "(L" + ELEMENT + ";)V",
+					 false));
+	    variables.add (var);
+	    return true;
+	}
+	IVmOperation opr = vm.getOperation (id);
+	int opcode = DefaultWords.getOpcode (id);
+	if (opr == null || opcode < 0 
+	    || DefaultWords.getOperation (opcode) != opr) {
+	    return false;
+	}
+	return operation (opr, index, count);
+    }
+
+    // Generates a call to a default operation. 
+
+    private boolean operation (IVmOperation opr, int index, int count) 
+	throws IOException {
+	if (opr instanceof If || opr instanceof Loop || opr instanceof Run) {
+	    return false;
+	}
+	code.write (ALOAD_0);
+	code.write (GETFIELD);
+	code.writeShort (fieldRef (COMPILED_BLOCK, "operations", 
+				    "[L" + OPERATION + ";"));
+	pushInt (operations.size ());
+	code.write (AALOAD);
+	code.write (ALOAD_1);
+	code.write (INVOKEINTERFACE);
+	code.writeShort (methodRef (OPERATION, "execute", 
+				     "(L" + VM + ";)V", true));
+	code.write (2);
+	code.write (0);
+	operations.add (opr);
+	if (index + 1 < count && changesDictionary (opr)) {
+	    // if (stale (vm)) return index + 1; 
+	    byte[] resume = intInstruction (index + 1);
+	    code.write (ALOAD_0);
+	    code.write (ALOAD_1);
+	    code.write (INVOKEVIRTUAL);
+	    code.writeShort (methodRef (COMPILED_BLOCK, "stale", 
+					 "(L" + VM + ";)Z", false));
+	    code.write (IFEQ);
+	    code.writeShort (3 + resume.length + 1);
+	    code.write (resume);
+	    code.write (IRETURN);
+	}
+	return true;
+    }
+
+    private static boolean changesDictionary (IVmOperation opr) {
+	return (opr instanceof DefVar || opr instanceof Forget 
+		|| opr instanceof Eval || opr instanceof Load);
+    }
+
+    private void pushInt (int value) throws IOException {
+	code.write (intInstruction (value));
+    }
+
+    // Returns the shortest instruction that pushes `value'. 
+
+    private byte[] intInstruction (int value) throws IOException {
+	if (value >= -1 && value <= 5) {
+	    return new byte[] { (byte) (ICONST_0 + value) };
+	} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+	    return new byte[] { BIPUSH, (byte) value };
+	} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+	    return new byte[] { SIPUSH, (byte) (value >> 8), (byte) value };
+	}
+	int i = constant ("I" + value, CONSTANT_INTEGER, value);
+	return new byte[] { LDC_W, (byte) (i >> 8), (byte) i };
+    }
+
+    // Assembles the class file. 
+
+    private byte[] toClassFile () throws IOException {
+	code.write (ICONST_M1);
+	code.write (IRETURN);
+	int thisClass = classRef (JIT_CLASS);
+	int superClass = classRef (COMPILED_BLOCK);
+	int superInit = methodRef (COMPILED_BLOCK, "<init>", "()V", false);
+	int init = utf8 ("<init>");
+	int initType = utf8 ("()V");
+	int run = utf8 ("run");
+	int runType = utf8 ("(L" + VM + ";)I");
+	int codeAttr = utf8 ("Code");
+
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+	DataOutputStream out = new DataOutputStream (bytes);
+	out.writeInt (0xCAFEBABE);
+	out.writeShort (0);
+	out.writeShort (CLASS_FILE_VERSION);
+	out.writeShort (poolCount);
+	poolBytes.writeTo (out);
+	out.writeShort (ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+	out.writeShort (thisClass);
+	out.writeShort (superClass);
+	out.writeShort (0); // interfaces
+	out.writeShort (0); // fields
+	out.writeShort (2); // methods
+
+	// public <init> () { super (); }
+	out.writeShort (ACC_PUBLIC);
+	out.writeShort (init);
+	out.writeShort (initType);
+	out.writeShort (1);
+	out.writeShort (codeAttr);
+	out.writeInt (12 + 5);
+	out.writeShort (1); // max_stack
+	out.writeShort (1); // max_locals
+	out.writeInt (5);
+	out.write (ALOAD_0);
+	out.write (INVOKESPECIAL);
+	out.writeShort (superInit);
+	out.write (RETURN);
+	out.writeShort (0); // exception table
+	out.writeShort (0); // attributes
+
+	// public int run (Vm vm)
+	out.writeShort (ACC_PUBLIC);
+	out.writeShort (run);
+	out.writeShort (runType);
+	out.writeShort (1);
+	out.writeShort (codeAttr);
+	out.writeInt (12 + code.size ());
+	out.writeShort (MAX_STACK);
+	out.writeShort (2); // max_locals
+	out.writeInt (code.size ());
+	codeBytes.writeTo (out);
+	out.writeShort (0);
+	out.writeShort (0);
+
+	out.writeShort (0); // class attributes
+	out.flush ();
+	return bytes.toByteArray ();
+    }
+
+    // Constant pool entries.  Each entry is added only once. 
+
+    private int utf8 (String s) throws IOException {
+	Integer i = pool.get ("U" + s);
+	if (i != null) return i;
+	poolData.writeByte (CONSTANT_UTF8);
+	poolData.writeUTF (s);
+	return newEntry ("U" + s);
+    }
+
+    private int classRef (String name) throws IOException {
+	Integer i = pool.get ("C" + name);
+	if (i != null) return i;
+	int n = utf8 (name);
+	poolData.writeByte (CONSTANT_CLASS);
+	poolData.writeShort (n);
+	return newEntry ("C" + name);
+    }
+
+    private int nameAndType (String name, String type) throws IOException {
+	String key = "N" + name + " " + type;
+	Integer i = pool.get (key);
+	if (i != null) return i;
+	int n = utf8 (name);
+	int t = utf8 (type);
+	poolData.writeByte (CONSTANT_NAME_AND_TYPE);
+	poolData.writeShort (n);
+	poolData.writeShort (t);
+	return newEntry (key);
+    }
+
+    private int fieldRef (String owner, String name, String type) 
+	throws IOException {
+	return memberRef (CONSTANT_FIELDREF, owner, name, type);
+    }
+
+    private int methodRef (String owner, String name, String type,
+			   boolean isInterface) throws IOException {
+	return memberRef (isInterface ? CONSTANT_INTERFACE_METHODREF
+			  : CONSTANT_METHODREF, owner, name, type);
+    }
+
+    private int memberRef (int tag, String owner, String name, String type)
+	throws IOException {
+	String key = "M" + tag + owner + "." + name + " " + type;
+	Integer i = pool.get (key);
+	if (i != null) return i;
+	int c = classRef (owner);
+	int nt = nameAndType (name, type);
+	poolData.writeByte (tag);
+	poolData.writeShort (c);
+	poolData.writeShort (nt);
+	return newEntry (key);
+    }
+
+    private int constant (String key, int tag, int value) throws IOException {
+	Integer i = pool.get (key);
+	if (i != null) return i;
+	poolData.writeByte (tag);
+	poolData.writeInt (value);
+	return newEntry (key);
+    }
+
+    // A long or double entry takes up two slots of the pool. 
+
+    private int constant (String key, int tag, long value) 
+	throws IOException {
+	Integer i = pool.get (key);
+	if (i != null) return i;
+	poolData.writeByte (tag);
+	poolData.writeLong (value);
+	int n = newEntry (key);
+	++poolCount;
+	return n;
+    }
+
+    private int newEntry (String key) {
+	int i = poolCount++;
+	pool.put (key, i);
+	return i;
+    }
+
+    // Defines the generated class. 
+
+    private static Class<?> define (byte[] classFile) 
+	throws ReflectiveOperationException {
+	if (defineHiddenClass != null) {
+	    Object lookup = defineHiddenClass.invoke (LOOKUP, classFile, 
+						      Boolean.TRUE, 
+						      NO_CLASS_OPTIONS);
+	    return (Class<?>) lookupClass.invoke (lookup);
+	}
+	return new Loader ().define (classFile);
+    }
+
+    // Each class defined without hidden class support gets its own
+    // loader, so that it can be unloaded when it is no longer used. 
+
+    private static final class Loader extends ClassLoader {
+	Loader () {
+	    super (BlockCompiler.class.getClassLoader ());
+	}
+
+	Class<?> define (byte[] classFile) {
+	    return defineClass (null, classFile, 0, classFile.length);
+	}
+    }
+
+    private final Vm vm;
+    private final ArrayList<IVmOperation> operations = 
+	new ArrayList<IVmOperation> ();
+    private final ArrayList<VarSlot> variables = 
+	new ArrayList<VarSlot> ();
+    private final ByteArrayOutputStream codeBytes = 
+	new ByteArrayOutputStream ();
+    private final DataOutputStream code = new DataOutputStream (codeBytes);
+    private final ByteArrayOutputStream poolBytes = 
+	new ByteArrayOutputStream ();
+    private final DataOutputStream poolData = new DataOutputStream (poolBytes);
+    private final HashMap<String, Integer> pool = 
+	new HashMap<String, Integer> ();
+    private int poolCount = 1;
+
+    static final boolean ENABLED = 
+	!"false".equals (System.getProperty ("niue.jit"));
+    static final int THRESHOLD = 
+	Integer.getInteger ("niue.jit.threshold", 1000).intValue ();
+    private static final int MAX_BYTE_CODES = 2048;
+
+    // MethodHandles.Lookup.defineHiddenClass, looked up reflectively
+    // as it is not available on older JVMs. 
+    private static final Object LOOKUP;
+    private static final Method defineHiddenClass;
+    private static final Method lookupClass;
+    private static final Object NO_CLASS_OPTIONS;
+
+    static {
+	Object lookup = null;
+	Method define = null;
+	Method lookupCls = null;
+	Object options = null;
+	try {
+	    Class<?> handles = Class.forName ("java.lang.invoke.MethodHandles");
+	    Class<?> lookupType = 
+		Class.forName ("java.lang.invoke.MethodHandles$Lookup");
+	    Class<?> optionType = Class.forName 
+		("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+	    lookup = handles.getMethod ("lookup").invoke (null);
+	    options = Array.newInstance (optionType, 0);
+	    define = lookupType.getMethod ("defineHiddenClass", byte[].class,
+					   boolean.class, options.getClass ());
+	    lookupCls = lookupType.getMethod ("lookupClass");
+	} catch (ReflectiveOperationException ex) {
+	    define = null;
+	}
+	LOOKUP = lookup;
+	defineHiddenClass = define;
+	lookupClass = lookupCls;
+	NO_CLASS_OPTIONS = options;
+    }
+
+    private static final String VM = "org/niue/vm/Vm";
+    private static final String TYPE = "org/niue/vm/ByteCode$Type";
+    private static final String ELEMENT = "org/niue/vm/DataStackElement";
+    private static final String OPERATION = "org/niue/vm/IVmOperation";
+    private static final String COMPILED_BLOCK = "org/niue/vm/CompiledBlock";
+    private static final String JIT_CLASS = "org/niue/vm/CompiledBlock$Jit";
+
+    // Class file format.  Version 49 class files are verified without 
+    // stack map frames. 
+    private static final int CLASS_FILE_VERSION = 49;
+    private static final int MAX_STACK = 4;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final byte ICONST_M1 = 0x02;
+    private static final byte ICONST_0 = 0x03;
+    private static final byte BIPUSH = 0x10;
+    private static final byte SIPUSH = 0x11;
+    private static final byte LDC_W = 0x13;
+    private static final byte LDC2_W = 0x14;
+    private static final byte ALOAD_0 = 0x2a;
+    private static final byte ALOAD_1 = 0x2b;
+    private static final byte AALOAD = 0x32;
+    private static final byte IFEQ = (byte) 0x99;
+    private static final byte IRETURN = (byte) 0xac;
+    private static final byte RETURN = (byte) 0xb1;
+    private static final byte GETSTATIC = (byte) 0xb2;
+    private static final byte GETFIELD = (byte) 0xb4;
+    private static final byte INVOKEVIRTUAL = (byte) 0xb6;
+    private static final byte INVOKESPECIAL = (byte) 0xb7;
+    private static final byte INVOKEINTERFACE = (byte) 0xb9;
+}
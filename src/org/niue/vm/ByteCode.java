@@ -25,16 +25,38 @@
 
 package org.niue.vm;
 
+import org.niue.vm.operation.Quick;
+
 // Represents a compiled byte code. 
 
 public final class ByteCode {
     
     public enum Type { BOOLEAN, INTEGER, BIGINTEGER, DOUBLE, STRING, 
-	    WORD, VM, IF, OBJECT };
+	    WORD, BLOCK, IF, OBJECT, OPERATION, FUSED, LONG };
     
     public Type type;
     public int code;
 
+    // For DOUBLE and LONG byte codes, the 64-bit value to push.  
+    // Doubles are stored as their bit pattern. 
+    long value = 0;
+
+    // For WORD byte codes, the operation or variable that the word
+    // was last resolved to.  See Vm.executeWord (ByteCode). 
+    WordTarget target = null;
+
+    // For BLOCK byte codes, the code block to push. 
+    CodeBlock block = null;
+
+    // For FUSED byte codes, the superinstruction that replaces the
+    // `code' byte codes that follow.  See Peephole. 
+    Peephole.Site site = null;
+
+    // For OPERATION byte codes, the variant the byte code was
+    // quickened to, or null if it was not executed yet. 
+    // See Vm.executeOperation (). 
+    Quick quick = null;
+
     public ByteCode () {
 	type = Type.BOOLEAN;
 	code = 0;
@@ -45,6 +67,50 @@ public final class ByteCode {
 	this.code = code;
     }
 
+    public ByteCode (CodeBlock block) {
+	this.type = Type.BLOCK;
+	this.code = 0;
+	this.block = block;
+    }
+
+    ByteCode (Peephole.Site site, int length) {
+	this.type = Type.FUSED;
+	this.code = length;
+	this.site = site;
+    }
+
+    // Returns a copy of this byte code without the state collected by
+    // running it.  A block is copied along with its byte codes.  The
+    // fused site is immutable and is shared. 
+
+    ByteCode fresh () {
+	ByteCode bc = new ByteCode (type, code);
+	bc.value = value;
+	bc.site = site;
+	if (block != null) {
+	    bc.block = block.fresh ();
+	}
+	return bc;
+    }
+
+    // The resolved target of a WORD byte code.  Instances are immutable,
+    // so that a target can be replaced atomically while another 
+    // thread is executing the same byte code.  The target is valid for
+    // any virtual machine whose dictionary version is the one it was
+    // resolved against.  See Vm.dictionaryVersion (). 
+
+    static final class WordTarget {
+	WordTarget (int version, VarSlot var, IVmOperation opr) {
+	    this.version = version;
+	    this.var = var;
+	    this.opr = opr;
+	}
+
+	final int version;
+	final VarSlot var;
+	final IVmOperation opr;
+    }
+
     public String toString () {
 	StringBuilder sb = new StringBuilder ();
 	sb.append ("type=").append (type).append (", code").append (code);
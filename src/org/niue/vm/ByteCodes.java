@@ -78,6 +78,18 @@ public final class ByteCodes {
 	return bc;
     }
 
+    // Makes a copy of this object whose byte codes share none of the
+    // state collected by running the originals.  See ByteCode.fresh ().
+
+    ByteCodes fresh () {
+	ByteCodes bc = new ByteCodes ();
+	bc.wordId = wordId;
+	for (int i = 0; i < byteCodes.size (); ++i) {
+	    bc.byteCodes.add (byteCodes.get (i).fresh ());
+	}
+	return bc;
+    }
+
     private int wordId = -1;
     private ArrayList<ByteCode> byteCodes = new ArrayList<ByteCode> ();
     private int index = 0;
@@ -0,0 +1,102 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+// A compiled code block.  Holds the byte codes of a `[ ... ]' or a 
+// `{ ... }' block.  A code block is not a virtual machine.  It is run
+// by the virtual machine that executes it, against that virtual 
+// machine's variables and data stack.  A `{ ... }' block gets a new
+// data stack each time it is run.  See Vm.runBlock (). 
+
+public final class CodeBlock {
+
+    public CodeBlock (boolean hasNewStack) {
+	this.hasNewStack = hasNewStack;
+    }
+
+    // Returns the compiled byte codes. 
+
+    public ByteCodes getByteCodes () {
+	return byteCodes;
+    }
+
+    // Returns true if the block runs on a new data stack. 
+
+    public boolean hasNewStack () {
+	return hasNewStack;
+    }
+
+    // Returns the inferred stack effect of the block when it is run by
+    // `vm', or null if it could not be inferred.  The effect is 
+    // computed again when the dictionary changes, since a default word
+    // used by the block may have been redefined. 
+
+    public StackEffect getStackEffect (Vm vm) {
+	int version = vm.dictionaryVersion ();
+	StackEffect e = effect;
+	if (e == null || e.version != version) {
+	    e = StackEffect.analyze (byteCodes, vm, version);
+	    effect = e;
+	}
+	return (e.isKnown () ? e : null);
+    }
+
+    // Adds a byte code to the end of the block. 
+
+    void add (ByteCode bc) {
+	byteCodes.add (bc);
+    }
+
+    // Returns a copy of the block that has not been run, compiled or
+    // analyzed.  See ByteCode.fresh (). 
+
+    CodeBlock fresh () {
+	CodeBlock block = new CodeBlock (hasNewStack);
+	block.byteCodes = byteCodes.fresh ();
+	return block;
+    }
+
+    // Replaces the byte codes with an optimized version. 
+    // See Peephole.optimize (). 
+
+    void setByteCodes (ByteCodes byteCodes) {
+	this.byteCodes = byteCodes;
+    }
+
+    // Tiered execution.  The number of times the block was run since 
+    // it was last compiled or deoptimized, and the compiled code, if 
+    // any.  See Vm.compiledCode (). 
+    int invocations = 0;
+    volatile CompiledBlock compiled = null;
+    // The dictionary version against which the block could not be
+    // compiled, -1 if its generated class could not be defined, or 0.
+    int uncompilable = 0;
+
+    private volatile StackEffect effect = null;
+
+    private ByteCodes byteCodes = new ByteCodes ();
+    private final boolean hasNewStack;
+}
@@ -0,0 +1,76 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+// The JVM code generated for a hot code block by BlockCompiler.  
+// The generated class extends this class and implements run ().  
+// Compiled code is specific to the dictionary version it was compiled
+// against, and can be run by any virtual machine that has that version.
+// See Vm.dictionaryVersion (). 
+
+public abstract class CompiledBlock {
+
+    protected CompiledBlock () { }
+
+    // Runs the block.  Returns -1 if the whole block was run.  If the 
+    // dictionary was changed by the block, stops and returns the index
+    // of the byte code from which the interpreter should continue. 
+
+    public abstract int run (Vm vm) throws VmException;
+
+    // Returns true if the code can still be run by `vm'. 
+
+    final boolean isValid (Vm vm) {
+	return !stale (vm);
+    }
+
+    // Returns true if the dictionary of `vm' has changed since the 
+    // block was compiled. 
+
+    protected final boolean stale (Vm vm) {
+	return (version != vm.dictionaryVersion ());
+    }
+
+    final void init (int version, IVmOperation[] operations,
+		     VarSlot[] variables) {
+	this.version = version;
+	this.operations = operations;
+	this.variables = variables;
+    }
+
+    // Returns the current value of the `i'th variable read by the 
+    // block. 
+
+    protected final DataStackElement variable (int i) {
+	return variables[i].get ();
+    }
+
+    // The operations called and the variables read by the block, 
+    // indexed by the generated code. 
+    protected IVmOperation[] operations = null;
+    private VarSlot[] variables = null;
+    private int version = 0;
+}
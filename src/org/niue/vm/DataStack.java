@@ -0,0 +1,347 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+import java.util.Arrays;
+
+// The data stack of a virtual machine.  Elements are not stored as
+// objects.  Each slot is made of a value and a type tag kept in two
+// parallel arrays, so pushing, popping and indexing never allocate.  
+// Values are stored in a long so that a slot can hold any 64-bit
+// payload.  Indexes used by the methods of this class start at the
+// bottom of the stack.  The virtual machine translates the `top
+// relative' indexes used by the Niue words.  
+// Elements that are not plain values, like code blocks, keep a
+// reference in a third array.  That array is created only when the
+// first such element is pushed. 
+
+public final class DataStack {
+
+    public DataStack () {
+	this (INITIAL_CAPACITY);
+    }
+
+    public DataStack (int capacity) {
+	if (capacity < 1) capacity = 1;
+	values = new long[capacity];
+	types = new byte[capacity];
+    }
+
+    // Returns the number of elements on the stack. 
+
+    public int size () {
+	return size;
+    }
+
+    // Returns true if there are no elements on the stack. 
+
+    public boolean isEmpty () {
+	return (size == 0);
+    }
+
+    // Pushes a value along with its type. 
+
+    public void push (long value, ByteCode.Type type) {
+	if (size == values.length) grow ();
+	values[size] = value;
+	types[size] = (byte) type.ordinal ();
+	++size;
+    }
+
+    // Pushes a reference along with its type. 
+
+    public void pushRef (Object ref, ByteCode.Type type) {
+	push (0, type);
+	if (refs == null) refs = new Object[values.length];
+	refs[size - 1] = ref;
+    }
+
+    // Pushes the value and type of a DataStackElement.  The
+    // element itself is not retained. 
+
+    public void push (DataStackElement elem) {
+	Object ref = elem.getRef ();
+	if (ref != null) {
+	    pushRef (ref, elem.getType ());
+	} else {
+	    push (elem.getLong (), elem.getType ());
+	}
+    }
+
+    // Pushes a copy of the element at index `i'. 
+
+    public void dup (int i) {
+	if (size == values.length) grow ();
+	values[size] = values[i];
+	types[size] = types[i];
+	if (refs != null) refs[size] = refs[i];
+	++size;
+    }
+
+    // Pushes a copy of the element at index `i' of `src'. 
+
+    public void pushFrom (DataStack src, int i) {
+	Object ref = src.ref (i);
+	if (ref != null) {
+	    pushRef (ref, src.type (i));
+	} else {
+	    push (src.longValue (i), src.type (i));
+	}
+    }
+
+    // Returns the type of the element at index `i'. 
+
+    public ByteCode.Type type (int i) {
+	return TYPES[types[i]];
+    }
+
+    // Returns the value of the element at index `i'. 
+
+    public int value (int i) {
+	return (int) values[i];
+    }
+
+    // Returns the full 64-bit value of the element at index `i'. 
+    // Used for DOUBLE and LONG elements. 
+
+    public long longValue (int i) {
+	return values[i];
+    }
+
+    // Returns the reference held by the element at index `i', or
+    // null if the element is a plain value. 
+
+    public Object ref (int i) {
+	return (refs == null ? null : refs[i]);
+    }
+
+    // Returns the type of the top element.  The stack should 
+    // not be empty. 
+
+    public ByteCode.Type topType () {
+	return TYPES[types[size - 1]];
+    }
+
+    // Returns the value of the top element.  The stack should 
+    // not be empty. 
+
+    public int topValue () {
+	return (int) values[size - 1];
+    }
+
+    // Returns the full 64-bit value of the top element.  The stack 
+    // should not be empty. 
+
+    public long topLongValue () {
+	return values[size - 1];
+    }
+
+    // Removes the top element.  The stack should not be empty. 
+
+    public void drop () {
+	--size;
+	if (refs != null) refs[size] = null;
+    }
+
+    // Replaces the element at index `i'. 
+
+    public void set (int i, long value, ByteCode.Type type) {
+	checkIndex (i);
+	values[i] = value;
+	types[i] = (byte) type.ordinal ();
+	if (refs != null) refs[i] = null;
+    }
+
+    // Replaces the element at index `i' with the value, type and
+    // reference of a DataStackElement. 
+
+    public void set (int i, DataStackElement elem) {
+	set (i, elem.getLong (), elem.getType ());
+	Object ref = elem.getRef ();
+	if (ref != null) {
+	    if (refs == null) refs = new Object[values.length];
+	    refs[i] = ref;
+	}
+    }
+
+    // Swaps the elements at indexes `i' and `j'. 
+
+    public void exchange (int i, int j) {
+	checkIndex (i);
+	checkIndex (j);
+	long v = values[i];
+	byte t = types[i];
+	values[i] = values[j];
+	types[i] = types[j];
+	values[j] = v;
+	types[j] = t;
+	if (refs != null) {
+	    Object r = refs[i];
+	    refs[i] = refs[j];
+	    refs[j] = r;
+	}
+    }
+
+    // Inserts an element at index `i', shifting the elements 
+    // above it up by one. 
+
+    public void insert (int i, long value, ByteCode.Type type) {
+	if (i < 0 || i > size) {
+	    throw new ArrayIndexOutOfBoundsException (i);
+	}
+	if (size == values.length) grow ();
+	System.arraycopy (values, i, values, i + 1, size - i);
+	System.arraycopy (types, i, types, i + 1, size - i);
+	if (refs != null) {
+	    System.arraycopy (refs, i, refs, i + 1, size - i);
+	    refs[i] = null;
+	}
+	values[i] = value;
+	types[i] = (byte) type.ordinal ();
+	++size;
+    }
+
+    // Inserts the value, type and reference of a DataStackElement 
+    // at index `i'. 
+
+    public void insert (int i, DataStackElement elem) {
+	insert (i, elem.getLong (), elem.getType ());
+	Object ref = elem.getRef ();
+	if (ref != null) {
+	    if (refs == null) refs = new Object[values.length];
+	    refs[i] = ref;
+	}
+    }
+
+    // Removes the element at index `i', shifting the elements
+    // above it down by one. 
+
+    public void remove (int i) {
+	checkIndex (i);
+	int n = size - i - 1;
+	if (n > 0) {
+	    System.arraycopy (values, i + 1, values, i, n);
+	    System.arraycopy (types, i + 1, types, i, n);
+	    if (refs != null) System.arraycopy (refs, i + 1, refs, i, n);
+	}
+	--size;
+	if (refs != null) refs[size] = null;
+    }
+
+    // Removes all elements. 
+
+    public void clear () {
+	if (refs != null) Arrays.fill (refs, 0, size, null);
+	size = 0;
+    }
+
+    // Returns the element at index `i' as a DataStackElement. 
+    // This allocates and is meant for code that has to hand out
+    // elements, not for the execution of primitive words. 
+
+    public DataStackElement elementAt (int i, Vm vm) {
+	checkIndex (i);
+	return new DataStackElement (values[i], TYPES[types[i]], 
+				     ref (i), vm);
+    }
+
+    // Moves all elements of `src' to the top of this stack, 
+    // preserving their order.  `src' is left empty. 
+
+    public void transferFrom (DataStack src) {
+	transferFrom (src, src.size);
+    }
+
+    // Moves the `n' bottom elements of `src', that is the oldest ones,
+    // to the top of this stack, preserving their order.  The elements
+    // left in `src' are moved down. 
+
+    public void transferFrom (DataStack src, int n) {
+	if (n > src.size) n = src.size;
+	if (n <= 0) return;
+	int left = src.size - n;
+	while (size + n > values.length) grow ();
+	System.arraycopy (src.values, 0, values, size, n);
+	System.arraycopy (src.types, 0, types, size, n);
+	System.arraycopy (src.values, n, src.values, 0, left);
+	System.arraycopy (src.types, n, src.types, 0, left);
+	if (src.refs != null) {
+	    if (refs == null) refs = new Object[values.length];
+	    System.arraycopy (src.refs, 0, refs, size, n);
+	    System.arraycopy (src.refs, n, src.refs, 0, left);
+	    Arrays.fill (src.refs, left, src.size, null);
+	}
+	size += n;
+	src.size = left;
+    }
+
+    // Returns a new stack with the same elements. 
+
+    public DataStack copy () {
+	DataStack s = new DataStack (Math.max (size, INITIAL_CAPACITY));
+	System.arraycopy (values, 0, s.values, 0, size);
+	System.arraycopy (types, 0, s.types, 0, size);
+	if (refs != null) {
+	    s.refs = new Object[s.values.length];
+	    System.arraycopy (refs, 0, s.refs, 0, size);
+	}
+	s.size = size;
+	return s;
+    }
+
+    private void checkIndex (int i) {
+	if (i < 0 || i >= size) {
+	    throw new ArrayIndexOutOfBoundsException (i);
+	}
+    }
+
+    private void grow () {
+	int capacity = values.length * 2;
+	long[] v = new long[capacity];
+	byte[] t = new byte[capacity];
+	System.arraycopy (values, 0, v, 0, size);
+	System.arraycopy (types, 0, t, 0, size);
+	values = v;
+	types = t;
+	if (refs != null) {
+	    Object[] r = new Object[capacity];
+	    System.arraycopy (refs, 0, r, 0, size);
+	    refs = r;
+	}
+    }
+
+    // The data stack of the code that runs a `{ ... }' block, if 
+    // this stack was created for such a block.  See Vm.runBlock (). 
+    DataStack outer = null;
+
+    private long[] values;
+    private byte[] types;
+    private Object[] refs = null;
+    private int size = 0;
+
+    private static final ByteCode.Type[] TYPES = ByteCode.Type.values ();
+    private static final int INITIAL_CAPACITY = 32;
+}
@@ -37,18 +37,38 @@ public class DataStackElement implements Comparable {
 	this.vm = vm;
     }
 
-    public DataStackElement (int e, ByteCode.Type t, Vm vm) {
+    public DataStackElement (long e, ByteCode.Type t, Vm vm) {
 	element = e;
 	type = t;
 	this.vm = vm;
     }
 
-    public int getElement () { return element; }
+    public DataStackElement (long e, ByteCode.Type t, Object ref, Vm vm) {
+	this (e, t, vm);
+	this.ref = ref;
+    }
+
+    public DataStackElement (CodeBlock block, Vm vm) {
+	this (0, ByteCode.Type.BLOCK, block, vm);
+    }
+
+    public int getElement () { return (int) element; }
+    public long getLong () { return element; }
+    public double getDouble () { return Double.longBitsToDouble (element); }
     public ByteCode.Type getType () { return type; }
 
+    // Returns the code block, if this element refers to one. 
+
+    public CodeBlock getBlock () { 
+	return (type == ByteCode.Type.BLOCK ? (CodeBlock) ref : null);
+    }
+
+    Object getRef () { return ref; }
+
     public void set (DataStackElement elem) {
         this.element = elem.element;
         this.type = elem.type;
+        this.ref = elem.ref;
         this.vm = elem.vm;
     }
 
@@ -87,7 +107,10 @@ public class DataStackElement implements Comparable {
 	return false;
     }
 
-    private int element;
+    // The value of the element.  Holds the bit pattern of a DOUBLE
+    // and the full value of a LONG.
+    private long element;
     private ByteCode.Type type;
+    private Object ref = null;
     private Vm vm = null;
 }
@@ -0,0 +1,78 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+// A List view of the data stack of a virtual machine.  The view 
+// always reflects the stack the virtual machine is currently using.
+// Elements are created on demand from the unboxed slots and 
+// changes made through the view are written back to the stack.
+// Index 0 is the bottom of the stack. 
+
+final class DataStackList extends AbstractList<DataStackElement> 
+    implements RandomAccess {
+
+    DataStackList (Vm vm) {
+	this.vm = vm;
+    }
+
+    @Override public int size () {
+	return vm.currentStack ().size ();
+    }
+
+    @Override public DataStackElement get (int i) {
+	return vm.currentStack ().elementAt (i, vm);
+    }
+
+    @Override public DataStackElement set (int i, DataStackElement elem) {
+	DataStack s = vm.currentStack ();
+	DataStackElement old = s.elementAt (i, vm);
+	s.set (i, elem);
+	return old;
+    }
+
+    @Override public void add (int i, DataStackElement elem) {
+	vm.currentStack ().insert (i, elem);
+	++modCount;
+    }
+
+    @Override public DataStackElement remove (int i) {
+	DataStack s = vm.currentStack ();
+	DataStackElement old = s.elementAt (i, vm);
+	s.remove (i);
+	++modCount;
+	return old;
+    }
+
+    @Override public void clear () {
+	vm.currentStack ().clear ();
+	++modCount;
+    }
+
+    private Vm vm;
+}
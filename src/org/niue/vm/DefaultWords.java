@@ -25,249 +25,339 @@
 
 package org.niue.vm;
 
-import java.util.Hashtable;
 import org.niue.vm.operation.*;
 
 // The default system words that will be assigned to all
 // virtual machines.  The operations represented by these
 // words are implemented in the org.niue.vm.operations.* classes. 
+// Each word is identified by its symbol ID, which is also its
+// index in the operations table.  Default words are also assigned
+// dense opcodes, in the order they are registered.  The compiler
+// turns a default word into an OPERATION byte code carrying its 
+// opcode, which is dispatched by indexing the opcode table. 
 
 final class DefaultWords {
     
-    static @SuppressWarnings("unchecked") Hashtable <Integer, IVmOperation> 
-	getDefaultOperation () {
-        if (vmOperations == null) {
-            vmOperations = new Hashtable<Integer, IVmOperation> ();
-            // Contract utilities, VM control.
-            vmOperations.put (DOT_S, new PrintStack ());
-            vmOperations.put (EMIT, new Emit ());
-            vmOperations.put (NEWLINE, new CharOutput ('\n'));
-            vmOperations.put (SPACE, new CharOutput (' '));
-            vmOperations.put (DOT_QUIT, new Quit ());
-            vmOperations.put (DOT, new Pop (true));
-            vmOperations.put (DOT_NS, new Pop (true, false));
-            vmOperations.put (DISCARD, new Pop (false));
-            vmOperations.put (FORGET, new Forget ());
-            vmOperations.put (RUN, new Run ());
-            vmOperations.put (DEF_VAR, new DefVar ());
-            vmOperations.put (DEF_VAR_STRICT, new DefVar (true));
-            vmOperations.put (SPAWN, new Spawn ());
-            vmOperations.put (SLEEP, new Sleep ());
-            vmOperations.put (SEND, new Send ());
-            vmOperations.put (RECEIVE, new Receive ());
-            vmOperations.put (SELF, new Pid (Pid.Type.SELF));
-            vmOperations.put (SUPER, new Pid (Pid.Type.SUPER));
-            vmOperations.put (LOAD, new Load ());
-	    vmOperations.put (EVAL, new Eval ());
-
-            // Arithmetic
-            vmOperations.put (ADD, new Arith (Arith.Operator.ADD));
-            vmOperations.put (SUB, new Arith (Arith.Operator.SUB));
-            vmOperations.put (MULT, new Arith (Arith.Operator.MULT));
-            vmOperations.put (DIV, new Arith (Arith.Operator.DIV));
-            vmOperations.put (MOD, new Arith (Arith.Operator.MOD));
-            vmOperations.put (DIV_MOD, new Arith (Arith.Operator.DIV_MOD));
-
-            // Comparison
-            vmOperations.put (EQUALS, new Cmpr (Cmpr.Operator.EQUALS));
-            vmOperations.put (EQ, new Cmpr (Cmpr.Operator.EQ));
-            vmOperations.put (LT, new Cmpr (Cmpr.Operator.LT));
-            vmOperations.put (GT, new Cmpr (Cmpr.Operator.GT));
-            vmOperations.put (LT_EQ, new Cmpr (Cmpr.Operator.LT_EQ));
-            vmOperations.put (GT_EQ, new Cmpr (Cmpr.Operator.GT_EQ));
-
-	    // Logical
-            vmOperations.put (AND, new Logical (Logical.Operator.AND));
-            vmOperations.put (OR, new Logical (Logical.Operator.OR));
-            vmOperations.put (NEGATE, new Logical (Logical.Operator.NEGATE));
-
-            // Stack manipulation
-            vmOperations.put (LEN, new StackManip (StackManip.Operator.LEN));
-            vmOperations.put (SWAP, new StackManip (StackManip.Operator.SWAP));
-            vmOperations.put (SWAP_AT, new StackManip 
+    // Returns the table of default operations, indexed by symbol ID. 
+    // The table is shared by all virtual machines and must be copied
+    // before it is modified. 
+
+    static IVmOperation[] getDefaultOperations () {
+        return vmOperations;
+    }
+
+    // Returns the opcode of the default word identified by the symbol
+    // `id', or -1 if `id' does not name a default word.  
+
+    static int getOpcode (int id) {
+	if (id < 0 || id >= opcodes.length) {
+	    return -1;
+	}
+	return opcodes[id];
+    }
+
+    // Returns the number of opcodes assigned. 
+
+    static int getOpcodeCount () {
+	return opcodeCount;
+    }
+
+    // Returns the operation that implements `opcode'. 
+
+    static IVmOperation getOperation (int opcode) {
+	return opcodeOperations[opcode];
+    }
+
+    // Returns the symbol ID of the word compiled to `opcode'. 
+
+    static int getSymbol (int opcode) {
+	return opcodeSymbols[opcode];
+    }
+
+    // Registers a default word.  The word is assigned the next 
+    // opcode.
+
+    private static void put (int id, IVmOperation opr) {
+	if (id >= vmOperations.length) {
+	    IVmOperation[] ops = new IVmOperation[id + 1];
+	    System.arraycopy (vmOperations, 0, ops, 0, vmOperations.length);
+	    vmOperations = ops;
+	}
+	if (id >= opcodes.length) {
+	    int[] codes = new int[vmOperations.length];
+	    System.arraycopy (opcodes, 0, codes, 0, opcodes.length);
+	    for (int i = opcodes.length; i < codes.length; ++i) {
+		codes[i] = -1;
+	    }
+	    opcodes = codes;
+	}
+	vmOperations[id] = opr;
+	if (opcodeCount == opcodeOperations.length) {
+	    IVmOperation[] ops = new IVmOperation[opcodeCount * 2];
+	    System.arraycopy (opcodeOperations, 0, ops, 0, opcodeCount);
+	    opcodeOperations = ops;
+	    int[] syms = new int[opcodeCount * 2];
+	    System.arraycopy (opcodeSymbols, 0, syms, 0, opcodeCount);
+	    opcodeSymbols = syms;
+	}
+	opcodes[id] = opcodeCount;
+	opcodeOperations[opcodeCount] = opr;
+	opcodeSymbols[opcodeCount] = id;
+	++opcodeCount;
+    }
+
+    // Console utilities, VM control.
+    static final int NEWLINE = Vm.internSymbol ("newline");
+    static final int SPACE = Vm.internSymbol ("space");
+    static final int DOT_QUIT = Vm.internSymbol (".q");
+    static final int DOT_S = Vm.internSymbol (".s");
+    static final int EMIT = Vm.internSymbol ("emit");
+    static final int DOT = Vm.internSymbol (".");
+    static final int DOT_NS = Vm.internSymbol (".ns");
+    static final int DISCARD = Vm.internSymbol (",");
+    static final int FORGET = Vm.internSymbol ("forget");
+    static final int RUN = Vm.internSymbol ("!");
+    static final int DEF_VAR = Vm.internSymbol (";");
+    static final int DEF_VAR_STRICT = Vm.internSymbol (";;");
+    static final int SPAWN = Vm.internSymbol ("!!");
+    static final int SLEEP = Vm.internSymbol ("sleep");
+    static final int SEND = Vm.internSymbol ("send");
+    static final int TRY_SEND = Vm.internSymbol ("try-send");
+    static final int MAILBOX = Vm.internSymbol ("mailbox-capacity");
+    static final int RECEIVE = Vm.internSymbol ("recv");
+    static final int SELF = Vm.internSymbol ("self");
+    static final int SUPER = Vm.internSymbol ("super");
+    static final int LOAD = Vm.internSymbol ("load");
+    static final int EVAL = Vm.internSymbol ("eval");
+    static final int STACK_EFFECT = Vm.internSymbol ("stack-effect");
+    static final int RECLAIM = Vm.internSymbol ("reclaim");
+    static final int SAVE_IMAGE = Vm.internSymbol ("save-image");
+    static final int LOAD_IMAGE = Vm.internSymbol ("load-image");
+
+    // Arithmetic
+    static final int ADD = Vm.internSymbol ("+");
+    static final int SUB = Vm.internSymbol ("-");
+    static final int MULT = Vm.internSymbol ("*");
+    static final int DIV = Vm.internSymbol ("/");
+    static final int MOD = Vm.internSymbol ("mod");
+    static final int DIV_MOD = Vm.internSymbol ("/mod");
+
+    // Comparison
+    static final int EQUALS = Vm.internSymbol ("equals");
+    static final int EQ = Vm.internSymbol ("=");
+    static final int LT = Vm.internSymbol ("<");
+    static final int GT = Vm.internSymbol (">");
+    static final int LT_EQ = Vm.internSymbol ("<=");
+    static final int GT_EQ = Vm.internSymbol (">=");
+
+    // Logical
+    static final int AND = Vm.internSymbol ("and");
+    static final int OR = Vm.internSymbol ("or");
+    static final int NEGATE = Vm.internSymbol ("not");
+
+    // Stack manipulation
+    static final int LEN = Vm.internSymbol ("len");
+    static final int SWAP = Vm.internSymbol ("swap");
+    static final int SWAP_AT = Vm.internSymbol ("swap-at");
+    static final int DUP = Vm.internSymbol ("dup");
+    static final int OVER = Vm.internSymbol ("over");
+    static final int ROT = Vm.internSymbol ("rot");
+    static final int DROP = Vm.internSymbol ("drop");
+    static final int TWO_SWAP = Vm.internSymbol ("2swap");
+    static final int TWO_DUP = Vm.internSymbol ("2dup");
+    static final int TWO_OVER = Vm.internSymbol ("2over");
+    static final int TWO_DROP = Vm.internSymbol ("2drop");
+    static final int SUPER_PUSH_TO = Vm.internSymbol ("<<");
+    static final int SUPER_PUSH_ALL_TO = Vm.internSymbol ("<<<");
+    static final int SUPER_POP_FROM = Vm.internSymbol (">>");
+    static final int SUPER_POP_ALL_FROM = Vm.internSymbol (">>>");
+    static final int CLR = Vm.internSymbol (".clr");
+
+    // Control flow
+    static final int IF = Vm.internSymbol ("if");
+    static final int ELIF = Vm.internSymbol ("elif");
+    static final int ELSE = Vm.internSymbol ("else");
+    static final int UNLESS = Vm.internSymbol ("unless");
+    static final int WHEN = Vm.internSymbol ("when");
+    static final int WHILE = Vm.internSymbol ("while");
+    static final int TIMES = Vm.internSymbol ("times");
+    static final int TIMES_BY = Vm.internSymbol ("times-by");
+
+    // String operations 
+    static final int STR_LEN = Vm.internSymbol ("str-len");
+    static final int STR_AT = Vm.internSymbol ("str-at");
+    static final int STR_EQ = Vm.internSymbol ("str-eq");
+    static final int STR_EQI = Vm.internSymbol ("str-eqi");
+    static final int STR_TOLOWER = Vm.internSymbol ("str-tolower");
+    static final int STR_TOUPPER = Vm.internSymbol ("str-toupper");
+    static final int STR_TRIM = Vm.internSymbol ("str-trim");
+    static final int SUBSTR = Vm.internSymbol ("substring");
+    static final int STR_REPL = Vm.internSymbol ("str-replace");
+    static final int STR_REPL_ALL = Vm.internSymbol ("str-replace-all");
+    static final int STR_FIND = Vm.internSymbol ("str-find");
+
+    // List operations on the stack
+    static final int AT = Vm.internSymbol ("at");
+    static final int REMOVE_AT = Vm.internSymbol ("remove-at");
+    static final int REMOVE_ALL = Vm.internSymbol ("remove-all");
+    static final int REMOVE = Vm.internSymbol ("remove");
+    static final int REMOVE_IF = Vm.internSymbol ("remove-if");
+    static final int GET = Vm.internSymbol ("get"); // Treats the stack as a plist.
+    static final int SET = Vm.internSymbol ("set"); // Treats the stack as a plist.
+    static final int REVERSE = Vm.internSymbol ("reverse");
+    static final int BSEARCH = Vm.internSymbol ("bsearch");
+    static final int SORT = Vm.internSymbol ("sort");
+    static final int REPLACE = Vm.internSymbol ("replace");
+    static final int REPLACE_ALL = Vm.internSymbol ("replace-all");
+
+    // Reflection and Objects
+    static final int NEW = Vm.internSymbol ("new");
+    static final int INVOKE_METHOD = Vm.internSymbol ("@");
+
+    private static final int INITIAL_TABLE_SIZE = 128;
+
+    // Operations indexed by symbol ID. 
+    private static IVmOperation[] vmOperations = 
+	new IVmOperation[INITIAL_TABLE_SIZE];
+    // Maps a symbol ID to an opcode. 
+    private static int[] opcodes = new int[0];
+    // Operations and symbol IDs indexed by opcode.  
+    private static IVmOperation[] opcodeOperations = 
+	new IVmOperation[INITIAL_TABLE_SIZE];
+    private static int[] opcodeSymbols = new int[INITIAL_TABLE_SIZE];
+    private static int opcodeCount = 0;
+
+    static {
+	// Contract utilities, VM control.
+	put (DOT_S, new PrintStack ());
+	put (EMIT, new Emit ());
+	put (NEWLINE, new CharOutput ('\n'));
+	put (SPACE, new CharOutput (' '));
+	put (DOT_QUIT, new Quit ());
+	put (DOT, new Pop (true));
+	put (DOT_NS, new Pop (true, false));
+	put (DISCARD, new Pop (false));
+	put (FORGET, new Forget ());
+	put (RUN, new Run ());
+	put (DEF_VAR, new DefVar ());
+	put (DEF_VAR_STRICT, new DefVar (true));
+	put (SPAWN, new Spawn ());
+	put (SLEEP, new Sleep ());
+	put (SEND, new Send (Send.Type.SEND));
+	put (TRY_SEND, new Send (Send.Type.TRY_SEND));
+	put (MAILBOX, new Mailbox ());
+	put (RECEIVE, new Receive ());
+	put (SELF, new Pid (Pid.Type.SELF));
+	put (SUPER, new Pid (Pid.Type.SUPER));
+	put (LOAD, new Load ());
+	put (EVAL, new Eval ());
+	put (STACK_EFFECT, new Effect ());
+	put (RECLAIM, new Reclaim ());
+	put (SAVE_IMAGE, new ImageFile (ImageFile.Type.SAVE));
+	put (LOAD_IMAGE, new ImageFile (ImageFile.Type.LOAD));
+
+	// Arithmetic
+	put (ADD, new Arith (Arith.Operator.ADD));
+	put (SUB, new Arith (Arith.Operator.SUB));
+	put (MULT, new Arith (Arith.Operator.MULT));
+	put (DIV, new Arith (Arith.Operator.DIV));
+	put (MOD, new Arith (Arith.Operator.MOD));
+	put (DIV_MOD, new Arith (Arith.Operator.DIV_MOD));
+
+	// Comparison
+	put (EQUALS, new Cmpr (Cmpr.Operator.EQUALS));
+	put (EQ, new Cmpr (Cmpr.Operator.EQ));
+	put (LT, new Cmpr (Cmpr.Operator.LT));
+	put (GT, new Cmpr (Cmpr.Operator.GT));
+	put (LT_EQ, new Cmpr (Cmpr.Operator.LT_EQ));
+	put (GT_EQ, new Cmpr (Cmpr.Operator.GT_EQ));
+
+	// Logical
+	put (AND, new Logical (Logical.Operator.AND));
+	put (OR, new Logical (Logical.Operator.OR));
+	put (NEGATE, new Logical (Logical.Operator.NEGATE));
+
+	// Stack manipulation
+	put (LEN, new StackManip (StackManip.Operator.LEN));
+	put (SWAP, new StackManip (StackManip.Operator.SWAP));
+	put (SWAP_AT, new StackManip 
 			      (StackManip.Operator.SWAP_AT));
-            vmOperations.put (DUP, new StackManip (StackManip.Operator.DUP));
-            vmOperations.put (OVER, new StackManip (StackManip.Operator.OVER));
-            vmOperations.put (ROT, new StackManip (StackManip.Operator.ROT));
-            vmOperations.put (DROP, new StackManip (StackManip.Operator.DROP));
-            vmOperations.put (TWO_SWAP, new StackManip 
+	put (DUP, new StackManip (StackManip.Operator.DUP));
+	put (OVER, new StackManip (StackManip.Operator.OVER));
+	put (ROT, new StackManip (StackManip.Operator.ROT));
+	put (DROP, new StackManip (StackManip.Operator.DROP));
+	put (TWO_SWAP, new StackManip 
 			      (StackManip.Operator.TWO_SWAP));
-            vmOperations.put (TWO_DUP, new StackManip 
+	put (TWO_DUP, new StackManip 
 			      (StackManip.Operator.TWO_DUP));
-            vmOperations.put (TWO_OVER, new StackManip 
+	put (TWO_OVER, new StackManip 
 			      (StackManip.Operator.TWO_OVER));
-            vmOperations.put (TWO_DROP, new StackManip 
+	put (TWO_DROP, new StackManip 
 			      (StackManip.Operator.TWO_DROP));
-            vmOperations.put (SUPER_PUSH_TO, new StackManip 
-                              (StackManip.Operator.SUPER_PUSH_TO));
-            vmOperations.put (SUPER_PUSH_ALL_TO, new StackManip 
-                              (StackManip.Operator.SUPER_PUSH_ALL_TO));
-            vmOperations.put (SUPER_POP_FROM, new StackManip 
-                              (StackManip.Operator.SUPER_POP_FROM));
-            vmOperations.put (SUPER_POP_ALL_FROM, new StackManip 
-                              (StackManip.Operator.SUPER_POP_ALL_FROM));
-            vmOperations.put (CLR, new StackManip (StackManip.Operator.CLR));
-
-	    // Control flow
-            vmOperations.put (IF, new If (If.Cond.IF));
-            vmOperations.put (ELIF, new If (If.Cond.ELIF));
-            vmOperations.put (ELSE, new If (If.Cond.ELSE));
-            vmOperations.put (UNLESS, new If (If.Cond.UNLESS));
-            vmOperations.put (WHEN, new If (If.Cond.WHEN));
-            vmOperations.put (WHILE, new Loop (Loop.Type.WHILE));
-            vmOperations.put (TIMES, new Loop (Loop.Type.TIMES));
-            vmOperations.put (TIMES_BY, new Loop (Loop.Type.TIMES_BY));
-
-	    // String operations
-            vmOperations.put (STR_LEN, new StringOprs 
+	put (SUPER_PUSH_TO, new StackManip 
+	                  (StackManip.Operator.SUPER_PUSH_TO));
+	put (SUPER_PUSH_ALL_TO, new StackManip 
+	                  (StackManip.Operator.SUPER_PUSH_ALL_TO));
+	put (SUPER_POP_FROM, new StackManip 
+	                  (StackManip.Operator.SUPER_POP_FROM));
+	put (SUPER_POP_ALL_FROM, new StackManip 
+	                  (StackManip.Operator.SUPER_POP_ALL_FROM));
+	put (CLR, new StackManip (StackManip.Operator.CLR));
+
+	// Control flow
+	put (IF, new If (If.Cond.IF));
+	put (ELIF, new If (If.Cond.ELIF));
+	put (ELSE, new If (If.Cond.ELSE));
+	put (UNLESS, new If (If.Cond.UNLESS));
+	put (WHEN, new If (If.Cond.WHEN));
+	put (WHILE, new Loop (Loop.Type.WHILE));
+	put (TIMES, new Loop (Loop.Type.TIMES));
+	put (TIMES_BY, new Loop (Loop.Type.TIMES_BY));
+
+	// String operations
+	put (STR_LEN, new StringOprs 
 			      (StringOprs.Operator.STR_LEN));
-            vmOperations.put (STR_AT, new StringOprs 
+	put (STR_AT, new StringOprs 
 			      (StringOprs.Operator.STR_AT));
-            vmOperations.put (STR_EQ, new StringOprs 
+	put (STR_EQ, new StringOprs 
 			      (StringOprs.Operator.STR_EQ));
-            vmOperations.put (STR_EQI, new StringOprs 
+	put (STR_EQI, new StringOprs 
 			      (StringOprs.Operator.STR_EQI));
-            vmOperations.put (STR_TOLOWER, new StringOprs 
+	put (STR_TOLOWER, new StringOprs 
 			      (StringOprs.Operator.STR_TOLOWER));
-            vmOperations.put (STR_TOUPPER, new StringOprs
+	put (STR_TOUPPER, new StringOprs
 			      (StringOprs.Operator.STR_TOUPPER));
-            vmOperations.put (STR_TRIM, new StringOprs 
+	put (STR_TRIM, new StringOprs 
 			      (StringOprs.Operator.STR_TRIM));
-            vmOperations.put (SUBSTR, new StringOprs 
+	put (SUBSTR, new StringOprs 
 			      (StringOprs.Operator.SUBSTR));
-            vmOperations.put (STR_REPL, new StringOprs 
+	put (STR_REPL, new StringOprs 
 			      (StringOprs.Operator.STR_REPL));
-            vmOperations.put (STR_REPL_ALL, new StringOprs 
+	put (STR_REPL_ALL, new StringOprs 
 			      (StringOprs.Operator.STR_REPL_ALL));
-            vmOperations.put (STR_FIND, new StringOprs 
+	put (STR_FIND, new StringOprs 
 			      (StringOprs.Operator.STR_FIND));
-	    
-	    // List operations on the stack
-	    vmOperations.put (AT, new ListOprs (ListOprs.Operator.AT));
-	    vmOperations.put (REMOVE_AT, new ListOprs 
+	
+	// List operations on the stack
+	put (AT, new ListOprs (ListOprs.Operator.AT));
+	put (REMOVE_AT, new ListOprs 
 			      (ListOprs.Operator.REMOVE_AT));
-	    vmOperations.put (REMOVE_ALL, new ListOprs 
+	put (REMOVE_ALL, new ListOprs 
 			      (ListOprs.Operator.REMOVE_ALL));
-	    vmOperations.put (REMOVE, new ListOprs 
+	put (REMOVE, new ListOprs 
 			      (ListOprs.Operator.REMOVE));
-	    vmOperations.put (REMOVE_IF, new ListOprs 
+	put (REMOVE_IF, new ListOprs 
 			      (ListOprs.Operator.REMOVE_IF));
-	    vmOperations.put (GET, new ListOprs (ListOprs.Operator.GET));
-	    vmOperations.put (SET, new ListOprs (ListOprs.Operator.SET));
-	    vmOperations.put (REVERSE, new ListOprs (ListOprs.Operator.REVERSE));
-	    vmOperations.put (BSEARCH, new ListOprs (ListOprs.Operator.BSEARCH));
-	    vmOperations.put (SORT, new ListOprs (ListOprs.Operator.SORT));
-	    vmOperations.put (REPLACE, new ListOprs (ListOprs.Operator.REPLACE));
-	    vmOperations.put (REPLACE_ALL, new ListOprs (ListOprs.Operator.REPLACE_ALL));
-
-            // Objects and reflection
-            vmOperations.put (NEW, new New ());
-            vmOperations.put (INVOKE_METHOD, new InvokeMethod ());
-        }
-        return (Hashtable<Integer, IVmOperation>) vmOperations.clone ();
-    }
-
-    // Console utilities, VM control.
-    static final int NEWLINE = "newline".hashCode ();
-    static final int SPACE = "space".hashCode ();
-    static final int DOT_QUIT = ".q".hashCode ();
-    static final int DOT_S = ".s".hashCode ();
-    static final int EMIT = "emit".hashCode ();
-    static final int DOT = ".".hashCode ();
-    static final int DOT_NS = ".ns".hashCode ();
-    static final int DISCARD = ",".hashCode ();
-    static final int FORGET = "forget".hashCode ();
-    static final int RUN = "!".hashCode ();
-    static final int DEF_VAR = ";".hashCode ();
-    static final int DEF_VAR_STRICT = ";;".hashCode ();
-    static final int SPAWN = "!!".hashCode ();
-    static final int SLEEP = "sleep".hashCode ();
-    static final int SEND = "send".hashCode ();
-    static final int RECEIVE = "recv".hashCode ();
-    static final int SELF = "self".hashCode ();
-    static final int SUPER = "super".hashCode ();
-    static final int LOAD = "load".hashCode ();
-    static final int EVAL = "eval".hashCode ();
-
-    // Arithmetic
-    static final int ADD = "+".hashCode ();
-    static final int SUB = "-".hashCode ();
-    static final int MULT = "*".hashCode ();
-    static final int DIV = "/".hashCode ();
-    static final int MOD = "mod".hashCode ();
-    static final int DIV_MOD = "/mod".hashCode ();
-
-    // Comparison
-    static final int EQUALS = "equals".hashCode ();
-    static final int EQ = "=".hashCode ();
-    static final int LT = "<".hashCode ();
-    static final int GT = ">".hashCode ();
-    static final int LT_EQ = "<=".hashCode ();
-    static final int GT_EQ = ">=".hashCode ();
-
-    // Logical
-    static final int AND = "and".hashCode ();
-    static final int OR = "or".hashCode ();
-    static final int NEGATE = "not".hashCode ();
-
-    // Stack manipulation
-    static final int LEN = "len".hashCode ();
-    static final int SWAP = "swap".hashCode ();
-    static final int SWAP_AT = "swap-at".hashCode ();
-    static final int DUP = "dup".hashCode ();
-    static final int OVER = "over".hashCode ();
-    static final int ROT = "rot".hashCode ();
-    static final int DROP = "drop".hashCode ();
-    static final int TWO_SWAP = "2swap".hashCode ();
-    static final int TWO_DUP = "2dup".hashCode ();
-    static final int TWO_OVER = "2over".hashCode ();
-    static final int TWO_DROP = "2drop".hashCode ();
-    static final int SUPER_PUSH_TO = "<<".hashCode ();
-    static final int SUPER_PUSH_ALL_TO = "<<<".hashCode ();
-    static final int SUPER_POP_FROM = ">>".hashCode ();
-    static final int SUPER_POP_ALL_FROM = ">>>".hashCode ();
-    static final int CLR = ".clr".hashCode ();
-
-    // Control flow
-    static final int IF = "if".hashCode ();
-    static final int ELIF = "elif".hashCode ();
-    static final int ELSE = "else".hashCode ();
-    static final int UNLESS = "unless".hashCode ();
-    static final int WHEN = "when".hashCode ();
-    static final int WHILE = "while".hashCode ();
-    static final int TIMES = "times".hashCode ();
-    static final int TIMES_BY = "times-by".hashCode ();
-
-    // String operations 
-    static final int STR_LEN = "str-len".hashCode ();
-    static final int STR_AT = "str-at".hashCode ();
-    static final int STR_EQ = "str-eq".hashCode ();
-    static final int STR_EQI = "str-eqi".hashCode ();
-    static final int STR_TOLOWER = "str-tolower".hashCode ();
-    static final int STR_TOUPPER = "str-toupper".hashCode ();
-    static final int STR_TRIM = "str-trim".hashCode ();
-    static final int SUBSTR = "substring".hashCode ();
-    static final int STR_REPL = "str-replace".hashCode ();
-    static final int STR_REPL_ALL = "str-replace-all".hashCode ();
-    static final int STR_FIND = "str-find".hashCode ();
-
-    // List operations on the stack
-    static final int AT = "at".hashCode ();
-    static final int REMOVE_AT = "remove-at".hashCode ();
-    static final int REMOVE_ALL = "remove-all".hashCode ();
-    static final int REMOVE = "remove".hashCode ();
-    static final int REMOVE_IF = "remove-if".hashCode ();
-    static final int GET = "get".hashCode (); // Treats the stack as a plist.
-    static final int SET = "set".hashCode (); // Treats the stack as a plist.
-    static final int REVERSE = "reverse".hashCode ();
-    static final int BSEARCH = "bsearch".hashCode ();
-    static final int SORT = "sort".hashCode ();
-    static final int REPLACE = "replace".hashCode ();
-    static final int REPLACE_ALL = "replace-all".hashCode ();
-
-    // Reflection and Objects
-    static final int NEW = "new".hashCode ();
-    static final int INVOKE_METHOD = "@".hashCode ();
+	put (GET, new ListOprs (ListOprs.Operator.GET));
+	put (SET, new ListOprs (ListOprs.Operator.SET));
+	put (REVERSE, new ListOprs (ListOprs.Operator.REVERSE));
+	put (BSEARCH, new ListOprs (ListOprs.Operator.BSEARCH));
+	put (SORT, new ListOprs (ListOprs.Operator.SORT));
+	put (REPLACE, new ListOprs (ListOprs.Operator.REPLACE));
+	put (REPLACE_ALL, new ListOprs (ListOprs.Operator.REPLACE_ALL));
 
-    private static Hashtable<Integer, IVmOperation> vmOperations = null;
+	// Objects and reflection
+	put (NEW, new New ());
+	put (INVOKE_METHOD, new InvokeMethod ());
+    }
 }
@@ -0,0 +1,481 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package org.niue.vm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32;
+
+// Writes the variables of a virtual machine, with the code blocks they
+// refer to, to a precompiled image, and reads them back into another
+// virtual machine without going through the Reader and the compiler.
+// Symbol and number IDs are only meaningful within one run, so the
+// image carries its own string and number pools, and the byte codes 
+// refer to entries in those pools.  The pools are interned again when 
+// the image is read.  Images conventionally have the .niuec 
+// extension. 
+
+// Layout of an image: 
+
+//    "NIUEC"   magic
+//    short     format version
+//    int       length of the payload
+//    int       CRC-32 of the payload
+//    payload:
+//      int n, n strings         (int length, UTF-8 bytes)
+//      int n, n big integers    (int length, two's-complement bytes)
+//      int n, n code blocks     (boolean new stack, int n, n values)
+//      int n, n variables       (int name, value)
+
+// A value is a byte tag followed by an int, a long or a pool index,
+// depending on its type.  Fused byte codes are not written.  Only the
+// byte codes they replace are, and the blocks are optimized again 
+// when they are read.  Objects cannot be saved. 
+
+public final class Image {
+
+    // Writes the variables of `vm' to `out'. 
+
+    public static void write (Vm vm, OutputStream out) 
+	throws VmException, IOException {
+	Image image = new Image ();
+	ByteArrayOutputStream payload = new ByteArrayOutputStream ();
+	image.writePayload (vm, new DataOutputStream (payload));
+	byte[] bytes = payload.toByteArray ();
+	CRC32 crc = new CRC32 ();
+	crc.update (bytes, 0, bytes.length);
+	DataOutputStream data = new DataOutputStream (out);
+	data.write (MAGIC);
+	data.writeShort (VERSION);
+	data.writeInt (bytes.length);
+	data.writeInt ((int) crc.getValue ());
+	data.write (bytes);
+	data.flush ();
+    }
+
+    // Reads an image from `in' and defines its variables in `vm'.  The
+    // image is validated as a whole before any variable is defined. 
+
+    public static void read (Vm vm, InputStream in) 
+	throws VmException, IOException {
+	DataInputStream data = new DataInputStream (in);
+	byte[] bytes;
+	try {
+	    byte[] magic = new byte[MAGIC.length];
+	    data.readFully (magic);
+	    for (int i = 0; i < magic.length; ++i) {
+		if (magic[i] != MAGIC[i]) invalid ("bad magic number");
+	    }
+	    int version = data.readShort ();
+	    if (version != VERSION) {
+		invalid ("unsupported version " + version);
+	    }
+	    int length = data.readInt ();
+	    int checksum = data.readInt ();
+	    if (length < 0) invalid ("bad length");
+	    bytes = new byte[length];
+	    data.readFully (bytes);
+	    CRC32 crc = new CRC32 ();
+	    crc.update (bytes, 0, length);
+	    if ((int) crc.getValue () != checksum) {
+		invalid ("checksum mismatch");
+	    }
+	} catch (EOFException ex) {
+	    invalid ("truncated");
+	    return;
+	}
+	Image image = new Image ();
+	try {
+	    image.readPayload (vm, new DataInputStream 
+			       (new ByteArrayInputStream (bytes)));
+	} catch (EOFException ex) {
+	    invalid ("truncated payload");
+	}
+    }
+
+    private void writePayload (Vm vm, DataOutputStream out) 
+	throws VmException, IOException {
+	VarSlot[] vars = vm.localVars ();
+	ArrayList<Integer> names = new ArrayList<Integer> ();
+	if (vars != null) {
+	    for (int i = 0; i < vars.length; ++i) {
+		if (vars[i] != null) {
+		    DataStackElement var = vars[i].get ();
+		    names.add (i);
+		    addValue (var.getType (), var.getLong (), 
+			      var.getBlock ());
+		}
+	    }
+	}
+	// Blocks are numbered as they are found, so a block that refers
+	// to another is scanned before the other is. 
+	for (int i = 0; i < blocks.size (); ++i) {
+	    ByteCodes codes = blocks.get (i).getByteCodes ();
+	    for (int j = 0; j < codes.size (); ++j) {
+		ByteCode bc = codes.at (j);
+		if (bc.type != ByteCode.Type.FUSED) {
+		    addValue (bc.type, codeValue (bc), bc.block);
+		}
+	    }
+	}
+	for (int i = 0; i < names.size (); ++i) {
+	    addString (Vm.symbolTable.get (names.get (i)));
+	}
+
+	out.writeInt (strings.size ());
+	for (int i = 0; i < strings.size (); ++i) {
+	    byte[] b = strings.get (i).getBytes (UTF8);
+	    out.writeInt (b.length);
+	    out.write (b);
+	}
+	out.writeInt (numbers.size ());
+	for (int i = 0; i < numbers.size (); ++i) {
+	    byte[] b = numbers.get (i).toByteArray ();
+	    out.writeInt (b.length);
+	    out.write (b);
+	}
+	out.writeInt (blocks.size ());
+	for (int i = 0; i < blocks.size (); ++i) {
+	    CodeBlock block = blocks.get (i);
+	    ByteCodes codes = block.getByteCodes ();
+	    int n = 0;
+	    for (int j = 0; j < codes.size (); ++j) {
+		if (codes.at (j).type != ByteCode.Type.FUSED) ++n;
+	    }
+	    out.writeBoolean (block.hasNewStack ());
+	    out.writeInt (n);
+	    for (int j = 0; j < codes.size (); ++j) {
+		ByteCode bc = codes.at (j);
+		if (bc.type != ByteCode.Type.FUSED) {
+		    writeValue (out, bc.type, codeValue (bc), bc.block);
+		}
+	    }
+	}
+	out.writeInt (names.size ());
+	for (int i = 0; i < names.size (); ++i) {
+	    DataStackElement var = vars[names.get (i)].get ();
+	    out.writeInt (stringIndex.get (Vm.symbolTable.get 
+					   (names.get (i))));
+	    writeValue (out, var.getType (), var.getLong (), var.getBlock ());
+	}
+	out.flush ();
+    }
+
+    // The 64-bit value of a byte code, as it would be held by a data
+    // stack element. 
+
+    private static long codeValue (ByteCode bc) {
+	if (bc.type == ByteCode.Type.LONG || bc.type == ByteCode.Type.DOUBLE) {
+	    return bc.value;
+	}
+	return bc.code;
+    }
+
+    // Adds the pool entries and the block that a value refers to. 
+
+    private void addValue (ByteCode.Type type, long value, CodeBlock block)
+	throws VmException {
+	switch (type) {
+	case STRING:
+	case WORD:
+	    addString (symbol ((int) value));
+	    break;
+	case OPERATION:
+	    addString (symbol (DefaultWords.getSymbol ((int) value)));
+	    break;
+	case BIGINTEGER:
+	    addNumber ((int) value);
+	    break;
+	case BLOCK:
+	    if (!blockIndex.containsKey (block)) {
+		blockIndex.put (block, blocks.size ());
+		blocks.add (block);
+	    }
+	    break;
+	case BOOLEAN:
+	case INTEGER:
+	case LONG:
+	case DOUBLE:
+	    break;
+	default:
+	    throw new VmException ("Cannot save a value of type " + type 
+				   + " in an image.");
+	}
+    }
+
+    private void writeValue (DataOutputStream out, ByteCode.Type type, 
+			     long value, CodeBlock block) 
+	throws IOException {
+	switch (type) {
+	case BOOLEAN:
+	    out.writeByte (TAG_BOOLEAN);
+	    out.writeInt ((int) value);
+	    break;
+	case INTEGER:
+	    out.writeByte (TAG_INTEGER);
+	    out.writeInt ((int) value);
+	    break;
+	case LONG:
+	    out.writeByte (TAG_LONG);
+	    out.writeLong (value);
+	    break;
+	case DOUBLE:
+	    out.writeByte (TAG_DOUBLE);
+	    out.writeLong (value);
+	    break;
+	case BIGINTEGER:
+	    out.writeByte (TAG_BIGINTEGER);
+	    out.writeInt (numberIndex.get ((int) value));
+	    break;
+	case STRING:
+	    out.writeByte (TAG_STRING);
+	    out.writeInt (stringIndex.get (Vm.symbolTable.get ((int) value)));
+	    break;
+	case WORD:
+	    out.writeByte (TAG_WORD);
+	    out.writeInt (stringIndex.get (Vm.symbolTable.get ((int) value)));
+	    break;
+	case OPERATION:
+	    out.writeByte (TAG_WORD);
+	    out.writeInt (stringIndex.get (Vm.symbolTable.get 
+					   (DefaultWords.getSymbol 
+					    ((int) value))));
+	    break;
+	default:
+	    out.writeByte (TAG_BLOCK);
+	    out.writeInt (blockIndex.get (block));
+	    break;
+	}
+    }
+
+    private static String symbol (int id) throws VmException {
+	String s = Vm.symbolTable.get (id);
+	if (s == null) {
+	    throw new VmException ("String was not interned.");
+	}
+	return s;
+    }
+
+    private void addString (String s) {
+	if (!stringIndex.containsKey (s)) {
+	    stringIndex.put (s, strings.size ());
+	    strings.add (s);
+	}
+    }
+
+    private void addNumber (int id) throws VmException {
+	if (numberIndex.containsKey (id)) return;
+	Number n = Vm.numberTable.get (id);
+	if (!(n instanceof BigInteger)) {
+	    throw new VmException ("Number was not interned.");
+	}
+	numberIndex.put (id, numbers.size ());
+	numbers.add ((BigInteger) n);
+    }
+
+    // Reads the payload.  Every string and number is interned and 
+    // pinned, since the byte codes of the blocks refer to them. 
+
+    private void readPayload (Vm vm, DataInputStream in) 
+	throws VmException, IOException {
+	int[] symbols = new int[count (in)];
+	for (int i = 0; i < symbols.length; ++i) {
+	    symbols[i] = Vm.internSymbol (new String (bytes (in), UTF8));
+	}
+	int[] numberIds = new int[count (in)];
+	for (int i = 0; i < numberIds.length; ++i) {
+	    byte[] b = bytes (in);
+	    if (b.length == 0) invalid ("empty number");
+	    numberIds[i] = Vm.numberTable.intern (new BigInteger (b));
+	}
+	// Blocks refer to blocks that come after them, so the references
+	// are resolved once all the blocks are read. 
+	CodeBlock[] codeBlocks = new CodeBlock[count (in)];
+	for (int i = 0; i < codeBlocks.length; ++i) {
+	    codeBlocks[i] = new CodeBlock (in.readBoolean ());
+	    int n = count (in);
+	    for (int j = 0; j < n; ++j) {
+		codeBlocks[i].add (readByteCode (in, symbols, numberIds, 
+						 null));
+	    }
+	}
+	for (int i = 0; i < codeBlocks.length; ++i) {
+	    ByteCodes bcs = codeBlocks[i].getByteCodes ();
+	    for (int j = 0; j < bcs.size (); ++j) {
+		ByteCode bc = bcs.at (j);
+		if (bc.type == ByteCode.Type.BLOCK) {
+		    bc.block = codeBlocks[index (bc.code, codeBlocks.length)];
+		    bc.code = 0;
+		}
+	    }
+	}
+	int nvars = count (in);
+	int[] names = new int[nvars];
+	DataStackElement[] values = new DataStackElement[nvars];
+	for (int i = 0; i < nvars; ++i) {
+	    names[i] = symbols[index (in.readInt (), symbols.length)];
+	    ByteCode bc = readByteCode (in, symbols, numberIds, codeBlocks);
+	    if (bc.type == ByteCode.Type.BLOCK) {
+		values[i] = new DataStackElement (bc.block, vm);
+	    } else if (bc.type == ByteCode.Type.WORD 
+		       || bc.type == ByteCode.Type.OPERATION) {
+		invalid ("a variable cannot hold a word");
+	    } else {
+		values[i] = new DataStackElement (codeValue (bc), bc.type, vm);
+	    }
+	}
+	if (in.read () != -1) invalid ("trailing data");
+	for (int i = 0; i < codeBlocks.length; ++i) {
+	    Peephole.optimize (codeBlocks[i]);
+	}
+	for (int i = 0; i < nvars; ++i) {
+	    vm.putVar (names[i], values[i], false);
+	}
+    }
+
+    // Reads a value as a byte code.  The code of a BLOCK byte code is
+    // the index of the block, which is resolved against `codeBlocks'
+    // if it is given. 
+
+    private static ByteCode readByteCode (DataInputStream in, int[] symbols,
+					  int[] numberIds, 
+					  CodeBlock[] codeBlocks)
+	throws VmException, IOException {
+	ByteCode bc = new ByteCode ();
+	int tag = in.readByte ();
+	switch (tag) {
+	case TAG_BOOLEAN:
+	    bc.type = ByteCode.Type.BOOLEAN;
+	    bc.code = in.readInt ();
+	    break;
+	case TAG_INTEGER:
+	    bc.type = ByteCode.Type.INTEGER;
+	    bc.code = in.readInt ();
+	    break;
+	case TAG_LONG:
+	    bc.type = ByteCode.Type.LONG;
+	    bc.value = in.readLong ();
+	    break;
+	case TAG_DOUBLE:
+	    bc.type = ByteCode.Type.DOUBLE;
+	    bc.value = in.readLong ();
+	    break;
+	case TAG_BIGINTEGER:
+	    bc.type = ByteCode.Type.BIGINTEGER;
+	    bc.code = numberIds[index (in.readInt (), numberIds.length)];
+	    break;
+	case TAG_STRING:
+	    bc.type = ByteCode.Type.STRING;
+	    bc.code = symbols[index (in.readInt (), symbols.length)];
+	    break;
+	case TAG_WORD:
+	    {
+		int id = symbols[index (in.readInt (), symbols.length)];
+		int opcode = DefaultWords.getOpcode (id);
+		if (opcode >= 0) {
+		    bc.type = ByteCode.Type.OPERATION;
+		    bc.code = opcode;
+		} else {
+		    bc.type = ByteCode.Type.WORD;
+		    bc.code = id;
+		}
+	    }
+	    break;
+	case TAG_BLOCK:
+	    bc.type = ByteCode.Type.BLOCK;
+	    bc.code = in.readInt ();
+	    if (codeBlocks != null) {
+		bc.block = codeBlocks[index (bc.code, codeBlocks.length)];
+		bc.code = 0;
+	    }
+	    break;
+	default:
+	    invalid ("unknown tag " + tag);
+	}
+	return bc;
+    }
+
+    private static int count (DataInputStream in) 
+	throws VmException, IOException {
+	int n = in.readInt ();
+	if (n < 0 || n > in.available ()) invalid ("bad count");
+	return n;
+    }
+
+    private static byte[] bytes (DataInputStream in) 
+	throws VmException, IOException {
+	byte[] b = new byte[count (in)];
+	in.readFully (b);
+	return b;
+    }
+
+    private static int index (int i, int length) throws VmException {
+	if (i < 0 || i >= length) invalid ("index out of range");
+	return i;
+    }
+
+    private static void invalid (String reason) throws VmException {
+	throw new VmException ("Invalid image: " + reason + ".");
+    }
+
+    private Image () { }
+
+    private final ArrayList<String> strings = new ArrayList<String> ();
+    private final HashMap<String, Integer> stringIndex = 
+	new HashMap<String, Integer> ();
+    private final ArrayList<BigInteger> numbers = 
+	new ArrayList<BigInteger> ();
+    private final HashMap<Integer, Integer> numberIndex = 
+	new HashMap<Integer, Integer> ();
+    private final ArrayList<CodeBlock> blocks = new ArrayList<CodeBlock> ();
+    private final IdentityHashMap<CodeBlock, Integer> blockIndex = 
+	new IdentityHashMap<CodeBlock, Integer> ();
+
+    private static final byte[] MAGIC = { 'N', 'I', 'U', 'E', 'C' };
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName ("UTF-8");
+
+    private static final int TAG_BOOLEAN = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_BIGINTEGER = 5;
+    private static final int TAG_STRING = 6;
+    private static final int TAG_WORD = 7;
+    private static final int TAG_BLOCK = 8;
+}
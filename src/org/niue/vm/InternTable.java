@@ -0,0 +1,172 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+import java.util.HashMap;
+
+// A table of values identified by dense integer IDs.  IDs are 
+// handed out in sequence starting from zero, so they can be used
+// to index plain arrays.  Unlike hash codes, two different values
+// never share an ID.  Looking up a value by its ID does not lock.
+// Values interned by the compiler are pinned and stay in the table for
+// good.  Values created at run time can be reclaimed by sweep () once
+// they are no longer reachable, and their IDs are then reused.  
+// See Reclaimer. 
+
+final class InternTable<T> {
+
+    // Returns the ID of `obj', adding it to the table if it was
+    // not already there.  Equal values get the same ID.  The value
+    // is pinned. 
+
+    synchronized int intern (T obj) {
+	Integer id = index.get (obj);
+	if (id != null) {
+	    pinned[id.intValue ()] = true;
+	    return id.intValue ();
+	}
+	int i = store (obj, true);
+	index.put (obj, i);
+	return i;
+    }
+
+    // Like intern (), but a value that was not already in the table
+    // is not pinned and may be reclaimed. 
+
+    synchronized int internValue (T obj) {
+	Integer id = index.get (obj);
+	if (id != null) {
+	    return id.intValue ();
+	}
+	int i = store (obj, false);
+	index.put (obj, i);
+	return i;
+    }
+
+    // Adds `obj' to the table under a new ID, even if an equal
+    // value is already present.  Used for values that are identified
+    // by reference.  The value may be reclaimed. 
+
+    synchronized int add (T obj) {
+	return store (obj, false);
+    }
+
+    // Returns the ID of `obj' or -1 if it is not in the table. 
+
+    synchronized int lookup (T obj) {
+	Integer id = index.get (obj);
+	return (id == null ? -1 : id.intValue ());
+    }
+
+    // Returns the value identified by `id' or null if there 
+    // is no such value. 
+
+    @SuppressWarnings("unchecked") T get (int id) {
+	Object[] e = entries;
+	if (id < 0 || id >= e.length) {
+	    return null;
+	}
+	return (T) e[id];
+    }
+
+    // Returns the number of IDs handed out so far. 
+
+    synchronized int size () {
+	return count;
+    }
+
+    // Returns the number of values that may be reclaimed, added
+    // since the last sweep. 
+
+    synchronized int getAllocated () {
+	return allocated;
+    }
+
+    // Removes the values that are neither pinned nor marked in `live',
+    // which is indexed by ID.  IDs at or beyond the length of `live'
+    // are kept.  Returns the number of values removed. 
+
+    synchronized int sweep (boolean[] live) {
+	int reclaimed = 0;
+	Object[] e = entries;
+	int n = Math.min (count, live.length);
+	for (int i = 0; i < n; ++i) {
+	    Object obj = e[i];
+	    if (obj == null || pinned[i] || live[i]) {
+		continue;
+	    }
+	    Integer id = index.get (obj);
+	    if (id != null && id.intValue () == i) {
+		index.remove (obj);
+	    }
+	    e[i] = null;
+	    if (freeCount == free.length) {
+		int[] f = new int[freeCount * 2];
+		System.arraycopy (free, 0, f, 0, freeCount);
+		free = f;
+	    }
+	    free[freeCount++] = i;
+	    ++reclaimed;
+	}
+	allocated = 0;
+	return reclaimed;
+    }
+
+    // Stores `obj' under a free or a new ID. 
+
+    private int store (T obj, boolean pin) {
+	if (!pin && ++allocated >= Reclaimer.THRESHOLD) {
+	    Reclaimer.request ();
+	}
+	if (freeCount > 0) {
+	    int i = free[--freeCount];
+	    entries[i] = obj;
+	    pinned[i] = pin;
+	    return i;
+	}
+	if (count == entries.length) {
+	    Object[] e = new Object[count * 2];
+	    System.arraycopy (entries, 0, e, 0, count);
+	    boolean[] p = new boolean[count * 2];
+	    System.arraycopy (pinned, 0, p, 0, count);
+	    pinned = p;
+	    entries = e;
+	}
+	entries[count] = obj;
+	pinned[count] = pin;
+	return count++;
+    }
+
+    private volatile Object[] entries = new Object[INITIAL_CAPACITY];
+    private boolean[] pinned = new boolean[INITIAL_CAPACITY];
+    private int count = 0;
+    private int[] free = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int allocated = 0;
+    private HashMap<T, Integer> index = new HashMap<T, Integer> ();
+
+    private static final int INITIAL_CAPACITY = 256;
+}
@@ -0,0 +1,188 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package org.niue.vm;
+
+import java.math.BigInteger;
+
+// Classifies a token as a literal in a single pass, without throwing
+// exceptions for tokens that turn out to be words.  Numbers are 
+// recognized by the following rules:
+
+//    [+-]digits              decimal integer
+//    0digits                 octal integer (decimal if it has 8 or 9)
+//    0xhexdigits             hexadecimal integer
+//    [+-]digits.digits[e[+-]digits]
+//                            double, either side of the `.' may be empty
+//    Ldigits                 big integer
+
+// Integers become INTEGERs, LONGs or BIGINTEGERs depending on how many 
+// bits they need.  After a call to scan (), the value of the literal 
+// is available from the accessor for its type.  A Literal is reused 
+// between calls and is not thread-safe. 
+
+final class Literal {
+
+    // Returns the type of the literal in `token', or WORD if it is
+    // not a literal. 
+
+    ByteCode.Type scan (String token) {
+	big = null;
+	value = 0;
+	int len = token.length ();
+	if (len == 0) return ByteCode.Type.WORD;
+	char c = token.charAt (0);
+	if (c == '\"') return ByteCode.Type.STRING;
+	if (token.equals ("true")) {
+	    value = 1;
+	    return ByteCode.Type.BOOLEAN;
+	}
+	if (token.equals ("false")) return ByteCode.Type.BOOLEAN;
+	boolean large = (c == 'L');
+	int start = large ? 1 : 0;
+	int pos = start;
+	boolean signed = false;
+	if (pos < len && (token.charAt (pos) == '-' 
+			  || token.charAt (pos) == '+')) {
+	    signed = true;
+	    ++pos;
+	}
+	int radix = 10;
+	if (!large && !signed && c == '0' && len > 1) {
+	    char x = token.charAt (1);
+	    if (x == 'x' || x == 'X') {
+		radix = 16;
+		pos = 2;
+	    } else {
+		radix = 8;
+	    }
+	}
+	int digits = pos;
+	boolean octal = true;
+	while (pos < len) {
+	    int d = digit (token.charAt (pos), radix == 16 ? 16 : 10);
+	    if (d < 0) break;
+	    if (d > 7) octal = false;
+	    ++pos;
+	}
+	if (pos < len) {
+	    if (radix == 16) return ByteCode.Type.WORD;
+	    return scanDouble (token, start, digits, pos);
+	}
+	if (pos == digits) return ByteCode.Type.WORD;
+	if (radix == 8 && !octal) radix = 10;
+	return integer (token, start, digits, radix, large);
+    }
+
+    int intValue () { return (int) value; }
+    long longValue () { return value; }
+    double doubleValue () { return Double.longBitsToDouble (value); }
+    BigInteger bigValue () { return big; }
+
+    // Scans the fraction and exponent of a double, starting at the 
+    // `.' at `pos'.  The token is known to be well-formed before it 
+    // is handed to Double.parseDouble (), so that cannot throw. 
+
+    private ByteCode.Type scanDouble (String token, int start, int digits, 
+				      int pos) {
+	int len = token.length ();
+	if (token.charAt (pos) != '.') return ByteCode.Type.WORD;
+	int mantissa = pos - digits;
+	++pos;
+	int fraction = pos;
+	while (pos < len && isDigit (token.charAt (pos))) ++pos;
+	mantissa += pos - fraction;
+	if (mantissa == 0) return ByteCode.Type.WORD;
+	if (pos < len) {
+	    char e = token.charAt (pos);
+	    if (e != 'e' && e != 'E') return ByteCode.Type.WORD;
+	    ++pos;
+	    if (pos < len && (token.charAt (pos) == '-' 
+			      || token.charAt (pos) == '+')) ++pos;
+	    int exponent = pos;
+	    while (pos < len && isDigit (token.charAt (pos))) ++pos;
+	    if (pos == exponent || pos < len) return ByteCode.Type.WORD;
+	}
+	double d = Double.parseDouble (token.substring (start));
+	value = Double.doubleToLongBits (d);
+	return ByteCode.Type.DOUBLE;
+    }
+
+    // Accumulates the digits of an integer.  Falls back to BigInteger
+    // only if the value does not fit in a long. 
+
+    private ByteCode.Type integer (String token, int start, int digits, 
+				   int radix, boolean large) {
+	boolean negative = (token.charAt (start) == '-');
+	int len = token.length ();
+	long limit = Long.MAX_VALUE / radix;
+	long v = 0;
+	boolean overflow = false;
+	for (int i = digits; i < len; ++i) {
+	    int d = digit (token.charAt (i), radix);
+	    if (v > limit || v * radix > Long.MAX_VALUE - d) {
+		overflow = true;
+		break;
+	    }
+	    v = v * radix + d;
+	}
+	if (overflow) {
+	    big = new BigInteger (token.substring (digits), radix);
+	    if (negative) big = big.negate ();
+	    if (large || big.bitLength () >= 64) {
+		return ByteCode.Type.BIGINTEGER;
+	    }
+	    value = big.longValue ();
+	    big = null;
+	} else {
+	    value = negative ? -v : v;
+	    if (large) {
+		big = BigInteger.valueOf (value);
+		return ByteCode.Type.BIGINTEGER;
+	    }
+	}
+	if (value == (int) value) return ByteCode.Type.INTEGER;
+	return ByteCode.Type.LONG;
+    }
+
+    // Unlike Character.digit (), accepts only ASCII digits. 
+
+    private static int digit (char c, int radix) {
+	if (c >= '0' && c <= '9') return c - '0';
+	if (radix == 16) {
+	    if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+	    if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+	}
+	return -1;
+    }
+
+    private static boolean isDigit (char c) {
+	return c >= '0' && c <= '9';
+    }
+
+    private long value = 0;
+    private BigInteger big = null;
+}
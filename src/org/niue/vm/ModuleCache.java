@@ -0,0 +1,137 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package org.niue.vm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+// Keeps the top-level byte codes of loaded script files, so that
+// loading a file again replays them instead of reading, tokenizing and
+// compiling it again.  An entry is keyed by the canonical path of the
+// file and is valid for as long as the modification time and size of 
+// the file stay the same.  Literals in the byte codes are pinned in 
+// the intern tables when they are compiled, so the byte codes can be 
+// replayed by any vm.  Byte codes and code blocks collect state as 
+// they run, such as resolved words and compiled code, so the cache 
+// keeps copies that are never run and each load gets fresh copies of
+// its own.  See ByteCode.fresh (). 
+
+// A file is cached only if it loaded without errors and did not leave
+// a code block open or switch the vm to compilation mode.  Set the 
+// property niue.modules to false to disable the cache. 
+
+public final class ModuleCache {
+
+    // The byte codes of a file being loaded for the first time.  See
+    // Vm.setRecording (). 
+
+    public static final class Recording {
+	Recording (String path, long modified, long length) {
+	    this.path = path;
+	    this.modified = modified;
+	    this.length = length;
+	}
+
+	void add (ByteCode bc) {
+	    byteCodes.add (bc.fresh ());
+	}
+
+	void invalidate () {
+	    valid = false;
+	}
+
+	private final String path;
+	private final long modified;
+	private final long length;
+	private final ByteCodes byteCodes = new ByteCodes ();
+	private boolean valid = true;
+	int depth = 0;
+    }
+
+    // Returns a copy of the cached byte codes of `file', or null if
+    // the file has not been loaded or has changed since. 
+
+    public static ByteCodes lookup (File file) {
+	if (!ENABLED || !file.isFile ()) return null;
+	String path = canonicalPath (file);
+	if (path == null) return null;
+	synchronized (modules) {
+	    Recording r = modules.get (path);
+	    if (r == null) return null;
+	    if (r.modified == file.lastModified () 
+		&& r.length == file.length ()) {
+		return r.byteCodes.fresh ();
+	    }
+	    modules.remove (path);
+	    return null;
+	}
+    }
+
+    // Starts a recording for `file'.  The file is stamped before it 
+    // is read, so that a change made while it loads invalidates the
+    // entry.  Returns null if the file cannot be cached. 
+
+    public static Recording record (File file) {
+	if (!ENABLED || !file.isFile ()) return null;
+	String path = canonicalPath (file);
+	if (path == null) return null;
+	return new Recording (path, file.lastModified (), file.length ());
+    }
+
+    // Adds a finished recording to the cache, if it is valid. 
+
+    public static void store (Recording r) {
+	if (r == null || !r.valid) return;
+	synchronized (modules) {
+	    modules.put (r.path, r);
+	}
+    }
+
+    // Drops all cached files. 
+
+    public static void clear () {
+	synchronized (modules) {
+	    modules.clear ();
+	}
+    }
+
+    private static String canonicalPath (File file) {
+	try {
+	    return file.getCanonicalPath ();
+	} catch (IOException ex) {
+	    return null;
+	}
+    }
+
+    private ModuleCache () { }
+
+    private static final HashMap<String, Recording> modules = 
+	new HashMap<String, Recording> ();
+    private static final boolean ENABLED = 
+	!"false".equals (System.getProperty ("niue.modules"));
+}
@@ -0,0 +1,272 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+import java.util.ArrayList;
+
+import org.niue.vm.operation.Fused;
+
+// A peephole optimizer for code blocks.  When a block is compiled,
+// frequent sequences of default words and integer literals, like 
+// `dup *' or `1 +', are fused into superinstructions that do the work
+// of the whole sequence in a single dispatch.  
+// The rules are kept in a table.  A rule is a pattern of default
+// words, where `#' matches any integer literal, and a Fuser that 
+// creates the operation for a matched sequence.  Rules with longer 
+// patterns are tried first.  The table can be changed with addRule ()
+// and removeRule () and report () tells how often each rule fired.
+// The optimizer can be turned off by setting the system property 
+// `niue.peephole' to false. 
+// The matched byte codes are kept after the FUSED byte code, which 
+// skips them when it runs.  If any of the fused words is redefined
+// later, the FUSED byte code does nothing and the original byte
+// codes are run instead. 
+
+public final class Peephole {
+
+    // Creates the operation that replaces a matched sequence.  
+    // `operations' holds the default operation of each word in the
+    // pattern and null for literals.  `values' holds the value of 
+    // each literal. 
+
+    public interface Fuser {
+	IVmOperation fuse (IVmOperation[] operations, int[] values);
+    }
+
+    // Adds a rule to the table, replacing any rule with the same
+    // pattern.  All words in `pattern' must be default words. 
+
+    public static synchronized void addRule (String pattern, Fuser fuser) {
+	removeRule (pattern);
+	Rule rule = new Rule (pattern, fuser);
+	int i = 0;
+	while (i < rules.size () 
+	       && rules.get (i).symbols.length >= rule.symbols.length) {
+	    ++i;
+	}
+	rules.add (i, rule);
+    }
+
+    // Removes the rule for `pattern' from the table. 
+
+    public static synchronized void removeRule (String pattern) {
+	String p = normalize (pattern);
+	for (int i = 0; i < rules.size (); ++i) {
+	    if (rules.get (i).pattern.equals (p)) {
+		rules.remove (i);
+		return;
+	    }
+	}
+    }
+
+    // Returns a report with the number of times each rule fired,
+    // one rule per line. 
+
+    public static synchronized String report () {
+	StringBuilder sb = new StringBuilder ();
+	for (Rule rule : rules) {
+	    sb.append (rule.pattern);
+	    sb.append (" => ");
+	    sb.append (rule.count);
+	    sb.append ('\n');
+	}
+	return sb.toString ();
+    }
+
+    // Fuses the matching sequences of a compiled block. 
+
+    static synchronized void optimize (CodeBlock block) {
+	if (!ENABLED || rules.isEmpty ()) {
+	    return;
+	}
+	ByteCodes byteCodes = block.getByteCodes ();
+	int count = byteCodes.size ();
+	ByteCodes optimized = null;
+	int i = 0;
+	while (i < count) {
+	    Rule rule = match (byteCodes, i, count);
+	    if (rule != null) {
+		if (optimized == null) {
+		    optimized = new ByteCodes ();
+		    for (int j = 0; j < i; ++j) {
+			optimized.add (byteCodes.at (j));
+		    }
+		}
+		optimized.add (rule.fuse (byteCodes, i));
+		int n = rule.symbols.length;
+		for (int j = 0; j < n; ++j) {
+		    optimized.add (byteCodes.at (i + j));
+		}
+		i += n;
+	    } else {
+		if (optimized != null) {
+		    optimized.add (byteCodes.at (i));
+		}
+		++i;
+	    }
+	}
+	if (optimized != null) {
+	    block.setByteCodes (optimized);
+	}
+    }
+
+    // Returns the first rule that matches the byte codes at `i'. 
+
+    private static Rule match (ByteCodes byteCodes, int i, int count) {
+	for (Rule rule : rules) {
+	    int n = rule.symbols.length;
+	    if (i + n > count) {
+		continue;
+	    }
+	    boolean matched = true;
+	    for (int j = 0; j < n && matched; ++j) {
+		matched = rule.matches (j, byteCodes.at (i + j));
+	    }
+	    if (matched) {
+		return rule;
+	    }
+	}
+	return null;
+    }
+
+    private static String normalize (String pattern) {
+	return pattern.trim ().replaceAll ("\\s+", " ");
+    }
+
+    // A rule of the table. 
+
+    private static final class Rule {
+	Rule (String pattern, Fuser fuser) {
+	    this.pattern = normalize (pattern);
+	    this.fuser = fuser;
+	    String[] words = this.pattern.split (" ");
+	    symbols = new int[words.length];
+	    for (int i = 0; i < words.length; ++i) {
+		if (words[i].equals ("#")) {
+		    symbols[i] = LITERAL;
+		} else {
+		    symbols[i] = Vm.internSymbol (words[i]);
+		    if (DefaultWords.getOpcode (symbols[i]) < 0) {
+			throw new IllegalArgumentException 
+			    ("Not a default word - " + words[i]);
+		    }
+		}
+	    }
+	}
+
+	// Returns true if `bc' matches the `i'th element of the 
+	// pattern. 
+
+	boolean matches (int i, ByteCode bc) {
+	    if (symbols[i] == LITERAL) {
+		return (bc.type == ByteCode.Type.INTEGER);
+	    }
+	    return (bc.type == ByteCode.Type.OPERATION 
+		    && DefaultWords.getSymbol (bc.code) == symbols[i]);
+	}
+
+	// Creates the FUSED byte code for the sequence at `i'. 
+
+	ByteCode fuse (ByteCodes byteCodes, int i) {
+	    int n = symbols.length;
+	    IVmOperation[] operations = new IVmOperation[n];
+	    int[] values = new int[n];
+	    int opcodeCount = 0;
+	    for (int j = 0; j < n; ++j) {
+		ByteCode bc = byteCodes.at (i + j);
+		if (bc.type == ByteCode.Type.OPERATION) {
+		    operations[j] = DefaultWords.getOperation (bc.code);
+		    ++opcodeCount;
+		} else {
+		    values[j] = bc.code;
+		}
+	    }
+	    int[] opcodes = new int[opcodeCount];
+	    opcodeCount = 0;
+	    for (int j = 0; j < n; ++j) {
+		ByteCode bc = byteCodes.at (i + j);
+		if (bc.type == ByteCode.Type.OPERATION) {
+		    opcodes[opcodeCount++] = bc.code;
+		}
+	    }
+	    ++count;
+	    return new ByteCode (new Site (fuser.fuse (operations, values),
+					   opcodes), n);
+	}
+
+	final String pattern;
+	final int[] symbols;
+	final Fuser fuser;
+	int count = 0;
+    }
+
+    // A fused sequence in a block. 
+
+    static final class Site {
+	Site (IVmOperation operation, int[] opcodes) {
+	    this.operation = operation;
+	    this.opcodes = opcodes;
+	}
+
+	// Returns true if any of the fused words has been redefined 
+	// in the dictionary of `vm'. 
+
+	boolean isShadowed (Vm vm) {
+	    for (int i = 0; i < opcodes.length; ++i) {
+		if (vm.isShadowed (opcodes[i])) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	final IVmOperation operation;
+	final int[] opcodes;
+    }
+
+    private static final ArrayList<Rule> rules = new ArrayList<Rule> ();
+    private static final int LITERAL = -1;
+    static final boolean ENABLED = 
+	!"false".equals (System.getProperty ("niue.peephole"));
+
+    static {
+	addRule ("dup *", Fused.Kind.SQUARE);
+	addRule ("swap drop", Fused.Kind.NIP);
+	addRule ("over over", Fused.Kind.TWO_DUP);
+	String[] arith = { "+", "-", "*", "/", "mod" };
+	for (int i = 0; i < arith.length; ++i) {
+	    addRule ("# " + arith[i], Fused.Kind.ARITH_CONST);
+	    addRule ("dup # " + arith[i], Fused.Kind.DUP_ARITH_CONST);
+	}
+	String[] cmpr = { "=", "<", ">", "<=", ">=" };
+	for (int i = 0; i < cmpr.length; ++i) {
+	    addRule ("# " + cmpr[i], Fused.Kind.CMPR_CONST);
+	    addRule ("dup # " + cmpr[i], Fused.Kind.DUP_CMPR_CONST);
+	}
+    }
+
+    private Peephole () { }
+}
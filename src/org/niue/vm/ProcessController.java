@@ -25,82 +25,298 @@
 
 package org.niue.vm;
 
-import java.util.LinkedList;
-import java.util.Iterator;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 
-// Manages the sub-process of a virtual machine.  Uses
-// a thread pool to run many concurrent processes. 
+// Manages the sub-process of a virtual machine.  Processes are green
+// threads: a process runs for a slice of `niue.reductions' byte codes
+// (2000 by default), then goes to the back of the run queue and lets
+// the others have a turn.  See Vm.runSlice ().  A CPU bound process 
+// thus cannot starve the rest.  
 
-public final class ProcessController extends Thread {
+// The run queues belong to a scheduler shared by all virtual 
+// machines, a work-stealing pool with one worker thread per 
+// processor.  A process that waits in recv is taken off the run 
+// queue and does not hold a worker thread.  It is put back when a 
+// message arrives.  See Vm.receiveOrSuspend ().  A process that waits
+// in sleep or in a blocking send lets the pool start another worker 
+// in its place.  The workers are stopped once no process is left, 
+// which lets the JVM exit when all processes are done. 
+
+// With the system property niue.threads set to `virtual', each 
+// process runs on a virtual thread instead, on runtimes that have 
+// them, and yields its thread after every slice.  A process blocked 
+// in recv or sleep then parks without holding on to a platform 
+// thread.  Virtual threads are daemon threads, so processes still 
+// running when the program ends are stopped with it. 
+
+public final class ProcessController {
 
     public ProcessController (Vm parent) {
         this.parent = parent;
     }
 
-    // Adds a process to the pool. 
+    // Adds a process to the run queue.  The process is entered in 
+    // the process table first, since it may start sending messages 
+    // to processes that look it up right away. 
 
     public int add (Vm vm) {
         int procId = vm.getNiue ().nextProcId ();
         vm.setProcId (procId);
-        vms.add (vm);
-        if (!started) {
-            this.start ();
-            started = true;
+        vm.getNiue ().addProcess (procId, vm);
+        ExecuteVm p = new ExecuteVm (vm);
+        synchronized (this) {
+            processes.add (p);
         }
+        p.start ();
         return procId;
     }
 
-    // Runs the processes in the pool. 
+    // Stops all running processes.  A process stops at the end of
+    // its current slice, or right away if it is waiting.  Processes
+    // waiting to send to one of them are woken up. 
 
-    public void run () {
-        executors = Executors.newCachedThreadPool ();
-        Vm vm = null;
-        stopPolling = false;
-        while (!stopPolling) {
-            if ((vm = vms.poll ()) != null) {
-                executors.execute (new ExecuteVm (vm));
-            } else {
-                this.yield ();
+    public synchronized void shutdown () {
+        for (ExecuteVm p : processes) {
+            p.cancel ();
+        }
+        if (executors != null)
+            executors.shutdownNow ();
+        stopped = true;
+    }
+
+    // Returns true if the controller was shut down. 
+
+    public synchronized boolean isShutdown () {
+        return stopped;
+    }
+
+    // Returns the virtual thread executor, creating it on the first 
+    // spawn.  Returns null if processes are run by the scheduler. 
+
+    private synchronized ExecutorService virtualThreads () {
+        if (executors == null && VIRTUAL_THREADS != null) {
+            try {
+                executors = (ExecutorService) VIRTUAL_THREADS.invoke (null);
+            } catch (Exception ex) {
+                executors = null;
             }
         }
+        return executors;
     }
 
-    // Stops all running processes. 
+    private synchronized void remove (ExecuteVm p) {
+        processes.remove (p);
+    }
 
-    public void shutdown () {
-        if (executors != null)
-            executors.shutdownNow ();
-        stopPolling = true;
+    // Returns the scheduler, starting it if no process is running.
+
+    private static synchronized Scheduler acquire () {
+        if (scheduler == null) {
+            scheduler = new Scheduler ();
+        }
+        ++live;
+        return scheduler;
+    }
+
+    // Called when a process is done.  Stops the scheduler after the
+    // last one. 
+
+    private static synchronized void release () {
+        if (--live == 0) {
+            scheduler.shutdown ();
+            scheduler = null;
+        }
     }
     
-    // Callback for the executor. 
+    // Runs a process one slice at a time.  On the scheduler, each 
+    // slice is a separate task.  A process suspended while it waits 
+    // for a message is not requeued until wake () is called. 
 
     public class ExecuteVm implements Runnable {
         ExecuteVm (Vm vm) {
             this.vm = vm;
         }
 
+        void start () {
+            ExecutorService virtual = virtualThreads ();
+            if (virtual != null) {
+                virtual.execute (this);
+            } else {
+                pool = acquire ();
+                vm.setWakeup (new Runnable () {
+                        public void run () {
+                            wake ();
+                        }
+                    });
+                pool.execute (this);
+            }
+        }
+
+        // Puts a suspended process back on the run queue.  If the
+        // process is still finishing the slice in which it was 
+        // suspended, it is requeued at the end of the slice instead. 
+
+        synchronized void wake () {
+            if (running) {
+                woken = true;
+            } else if (parked) {
+                parked = false;
+                pool.execute (this);
+            }
+        }
+
+        // Stops the process.  A thread running it is interrupted, so 
+        // that it does not stay blocked in recv or sleep. 
+
+        synchronized void cancel () {
+            cancelled = true;
+            vm.closeMailbox ();
+            if (runner != null) {
+                runner.interrupt ();
+            }
+        }
+
         public void run () {
+            boolean done = true;
+            synchronized (this) {
+                runner = Thread.currentThread ();
+                running = true;
+            }
             try {
-                vm.run ();
+                if (pool == null) {
+                    while (!(done = slice ())) {
+                        Thread.yield ();
+                    }
+                } else {
+                    done = slice ();
+                }
             } catch (VmException ex) {
                 parent.writeLine (ex.getMessage () + " in process " + vm);
+                done = true;
             } catch (Exception ex) { 
                 parent.writeLine (ex.getMessage () + " in process " + vm);
+                done = true;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    running = false;
+                }
+                // Do not pass an interrupt meant for this process on
+                // to the next task of the worker thread. 
+                if (pool != null) Thread.interrupted ();
             }
+            if (!done) {
+                synchronized (this) {
+                    if (!woken && vm.isParked ()) {
+                        parked = true;
+                        return;
+                    }
+                    woken = false;
+                }
+                pool.requeue (this);
+                return;
+            }
+            vm.closeMailbox ();
             vm.getNiue ().removeProcess (vm.getProcId ());
-	    vm.getParentVm ().discardChildVm (vm.getVmId ());
+            remove (this);
+            if (pool != null) release ();
+        }
+
+        private boolean slice () throws VmException {
+            if (cancelled) {
+                return true;
+            }
+            return vm.runSlice (REDUCTIONS);
         }
 
         private Vm vm = null;
+        private Scheduler pool = null;
+        private Thread runner = null;
+        private volatile boolean cancelled = false;
+        // True while a slice runs, true while the process is off the
+        // run queue waiting for a message, and true if it was woken 
+        // up during the slice that suspended it. 
+        private boolean running = false;
+        private boolean parked = false;
+        private boolean woken = false;
+    }
+
+    // The work-stealing pool that runs the processes.  Each worker 
+    // thread has its own run queue, where the processes it spawns and
+    // the ones it suspends go to the back.  
+
+    private static final class Scheduler extends ForkJoinPool {
+        Scheduler () {
+            super (Runtime.getRuntime ().availableProcessors (), 
+                   new ProcessThreadFactory (), null, true);
+        }
+
+        // Puts a suspended process back on the run queue of the 
+        // current worker.  A worker only looks at the processes 
+        // spawned from outside the pool once its own queue is empty, 
+        // so those are moved to its queue first, ahead of `p'. 
+        // Otherwise they would wait for a busy worker to run out of 
+        // work. 
+
+        void requeue (ExecuteVm p) {
+            ForkJoinTask<?> t;
+            while ((t = pollSubmission ()) != null) {
+                t.fork ();
+            }
+            execute (p);
+        }
+    }
+
+    // Creates the worker threads of the scheduler.  They are not 
+    // daemon threads, so that the JVM waits for running processes. 
+
+    private static final class ProcessThreadFactory 
+        implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        public ForkJoinWorkerThread newThread (ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread (pool) { };
+            t.setName ("niue-process-" + count.incrementAndGet ());
+            t.setDaemon (false);
+            return t;
+        }
+
+        private static final AtomicInteger count = new AtomicInteger ();
     }
 
     private Vm parent = null;
-    private boolean started = false;
-    private volatile LinkedList<Vm> vms = new LinkedList<Vm> ();    
+    private final Set<ExecuteVm> processes = new HashSet<ExecuteVm> ();
     private ExecutorService executors = null;
-    private volatile boolean stopPolling = false;
-}
+    private boolean stopped = false;
+
+    private static Scheduler scheduler = null;
+    // Number of processes on the scheduler. 
+    private static int live = 0;
+
+    static final int REDUCTIONS = 
+        Math.max (Integer.getInteger ("niue.reductions", 2000).intValue (), 1);
 
+    // Executors.newVirtualThreadPerTaskExecutor (), looked up by 
+    // reflection so that the controller still runs on older runtimes.
+    // Null if virtual threads were not asked for or are not available.
+    private static final Method VIRTUAL_THREADS;
+
+    static {
+	Method m = null;
+	if ("virtual".equals (System.getProperty ("niue.threads"))) {
+	    try {
+		m = Executors.class.getMethod 
+		    ("newVirtualThreadPerTaskExecutor");
+	    } catch (Exception ex) {
+		m = null;
+	    }
+	}
+	VIRTUAL_THREADS = m;
+    }
+}
@@ -0,0 +1,319 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Reclaims the strings, numbers and objects that were interned at run
+// time and are no longer reachable.  Values are interned when they are
+// pushed to a data stack, so the results of string concatenation or 
+// big number arithmetic would otherwise stay in the intern tables for
+// good.  
+// The reclaimer is a mark and sweep collector.  The roots are the 
+// data stacks, inboxes and variables of all live virtual machines.  
+// Values interned by the compiler are pinned, so code blocks need not
+// be scanned.  A collection is requested when enough new values were
+// interned.  It runs at a safe point, when every virtual machine that
+// is running code has stopped between two byte codes of an interpreter
+// loop, where no value is held outside its roots.  See Vm.safepoint ().
+// A virtual machine that does not reach a safe point in time makes 
+// the collection give up until the next request.  
+// The system property `niue.reclaim' turns automatic collections off
+// when false and `niue.reclaim.threshold' sets the number of new 
+// values that triggers one.  report () gives the reclaimed counts. 
+
+public final class Reclaimer {
+
+    // Returns a report of the values reclaimed so far. 
+
+    public static String report () {
+	lock.lock ();
+	try {
+	    return "collections: " + collections 
+		+ ", strings: " + reclaimedStrings 
+		+ ", numbers: " + reclaimedNumbers 
+		+ ", objects: " + reclaimedObjects;
+	} finally {
+	    lock.unlock ();
+	}
+    }
+
+    // Requests a collection at the next safe point. 
+
+    static void request () {
+	if (ENABLED) {
+	    requested = true;
+	}
+    }
+
+    // Returns true if a collection was requested. 
+
+    static boolean isRequested () {
+	return requested;
+    }
+
+    // Adds a virtual machine to the roots. 
+
+    static void register (Vm vm) {
+	lock.lock ();
+	try {
+	    vms.put (vm, Boolean.TRUE);
+	} finally {
+	    lock.unlock ();
+	}
+    }
+
+    // Removes a virtual machine from the roots. 
+
+    static void unregister (Vm vm) {
+	lock.lock ();
+	try {
+	    vms.remove (vm);
+	} finally {
+	    lock.unlock ();
+	}
+    }
+
+    // Called when a virtual machine starts running code.  Waits if a 
+    // collection is in progress.  The lock is taken only when a 
+    // collection was requested.  Otherwise a collector that starts 
+    // later is bound to see the count, since it sets `requested' 
+    // before it reads `running'. 
+
+    static void enter () {
+	running.incrementAndGet ();
+	if (!requested) {
+	    return;
+	}
+	lock.lock ();
+	try {
+	    if (collecting) {
+		running.decrementAndGet ();
+		changed.signalAll ();
+		awaitCollection ();
+		running.incrementAndGet ();
+	    }
+	} finally {
+	    lock.unlock ();
+	}
+    }
+
+    // Called when a virtual machine stops running code.  A collector
+    // waiting for the count to drop is signalled. 
+
+    static void leave () {
+	running.decrementAndGet ();
+	if (!requested) {
+	    return;
+	}
+	lock.lock ();
+	try {
+	    changed.signalAll ();
+	} finally {
+	    lock.unlock ();
+	}
+    }
+
+    // Called by a running virtual machine at a safe point.  If a
+    // collection was requested, either runs it or waits for the 
+    // virtual machine running it.  Returns the number of values 
+    // reclaimed, or -1 if this call did not run a collection. 
+
+    static int safepoint () {
+	lock.lock ();
+	try {
+	    if (!requested) {
+		return -1;
+	    }
+	    running.decrementAndGet ();
+	    if (collecting) {
+		changed.signalAll ();
+		awaitCollection ();
+		running.incrementAndGet ();
+		return -1;
+	    }
+	    collecting = true;
+	    int reclaimed = -1;
+	    try {
+		if (awaitSafepoints ()) {
+		    reclaimed = collect ();
+		}
+	    } finally {
+		requested = false;
+		collecting = false;
+		running.incrementAndGet ();
+		changed.signalAll ();
+	    }
+	    return reclaimed;
+	} finally {
+	    lock.unlock ();
+	}
+    }
+
+    // Runs a collection now.  Must be called at a safe point. 
+
+    static int collectNow () {
+	requested = true;
+	return safepoint ();
+    }
+
+    // Marks a value found on a data stack or in a variable. 
+
+    void mark (ByteCode.Type type, int value) {
+	boolean[] live = null;
+	switch (type) {
+	case STRING:
+	    live = strings;
+	    break;
+	case BIGINTEGER:
+	    live = numbers;
+	    break;
+	case OBJECT:
+	    live = objects;
+	    break;
+	default:
+	    return;
+	}
+	if (value >= 0 && value < live.length) {
+	    live[value] = true;
+	}
+    }
+
+    // Marks the name of a variable. 
+
+    void markSymbol (int id) {
+	if (id >= 0 && id < strings.length) {
+	    strings[id] = true;
+	}
+    }
+
+    // Marks all the elements of `stack'. 
+
+    void mark (DataStack stack) {
+	if (stack == null) {
+	    return;
+	}
+	int n = stack.size ();
+	for (int i = 0; i < n; ++i) {
+	    mark (stack.type (i), stack.value (i));
+	}
+    }
+
+    private Reclaimer () { }
+
+    // Waits until the other running virtual machines have reached a 
+    // safe point.  Returns false if they did not in time. 
+
+    private static boolean awaitSafepoints () {
+	long deadline = System.currentTimeMillis () + SAFEPOINT_TIMEOUT;
+	while (running.get () > 0) {
+	    long wait = deadline - System.currentTimeMillis ();
+	    if (wait <= 0) {
+		return false;
+	    }
+	    try {
+		changed.await (wait, TimeUnit.MILLISECONDS);
+	    } catch (InterruptedException ex) {
+		Thread.currentThread ().interrupt ();
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    // Waits for the collection in progress, if any, to finish. 
+
+    private static void awaitCollection () {
+	while (collecting) {
+	    try {
+		changed.await ();
+	    } catch (InterruptedException ex) {
+		Thread.currentThread ().interrupt ();
+		return;
+	    }
+	}
+    }
+
+    // Marks the values reachable from the live virtual machines and 
+    // sweeps the rest.  The intern tables are locked, so that no ID can
+    // be handed out between the mark and the sweep. 
+
+    private static int collect () {
+	synchronized (Vm.symbolTable) {
+	    synchronized (Vm.numberTable) {
+		synchronized (Vm.objectTable) {
+		    Reclaimer r = new Reclaimer ();
+		    r.strings = new boolean[Vm.symbolTable.size ()];
+		    r.numbers = new boolean[Vm.numberTable.size ()];
+		    r.objects = new boolean[Vm.objectTable.size ()];
+		    ArrayList<Vm> roots = new ArrayList<Vm> (vms.keySet ());
+		    for (Vm vm : roots) {
+			vm.markRoots (r);
+		    }
+		    int s = Vm.symbolTable.sweep (r.strings);
+		    int n = Vm.numberTable.sweep (r.numbers);
+		    int o = Vm.objectTable.sweep (r.objects);
+		    ++collections;
+		    reclaimedStrings += s;
+		    reclaimedNumbers += n;
+		    reclaimedObjects += o;
+		    return s + n + o;
+		}
+	    }
+	}
+    }
+
+    private boolean[] strings;
+    private boolean[] numbers;
+    private boolean[] objects;
+
+    // An explicit lock rather than a monitor, so that a virtual thread
+    // waiting for a collection parks instead of pinning its carrier. 
+    private static final ReentrantLock lock = new ReentrantLock ();
+    private static final Condition changed = lock.newCondition ();
+    private static final WeakHashMap<Vm, Boolean> vms = 
+	new WeakHashMap<Vm, Boolean> ();
+    private static volatile boolean requested = false;
+    private static boolean collecting = false;
+    // The number of virtual machines running code.  Updated without
+    // the lock, see enter (). 
+    private static final AtomicInteger running = new AtomicInteger ();
+    private static long collections = 0;
+    private static long reclaimedStrings = 0;
+    private static long reclaimedNumbers = 0;
+    private static long reclaimedObjects = 0;
+
+    static final boolean ENABLED = 
+	!"false".equals (System.getProperty ("niue.reclaim"));
+    static final int THRESHOLD = 
+	Integer.getInteger ("niue.reclaim.threshold", 1 << 16).intValue ();
+    private static final long SAFEPOINT_TIMEOUT = 100;
+}
@@ -0,0 +1,53 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package org.niue.vm;
+
+// The state of a virtual machine at one point in time, from which 
+// independent virtual machines can be forked cheaply.  A typical use 
+// is to load a library into a root virtual machine once, take a 
+// snapshot of it, and fork a fresh virtual machine from the snapshot
+// for each request.  Forking copies only the data stack.  The 
+// variables and operations tables are shared until a forked virtual 
+// machine changes them.  See Vm.snapshot (). 
+
+public final class Snapshot {
+
+    Snapshot (Vm frozen) {
+	this.frozen = frozen;
+    }
+
+    // Returns a new virtual machine that starts from this snapshot. 
+    // Can be called from any thread. 
+
+    public Vm fork () {
+	return frozen.fork ();
+    }
+
+    // A virtual machine that holds the captured state and never runs.
+    // It also keeps the captured values alive for the Reclaimer. 
+    private final Vm frozen;
+}
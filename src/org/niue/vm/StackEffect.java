@@ -0,0 +1,185 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm;
+
+// The stack effect of a code block, inferred from its byte codes at
+// compile time.  `inputs' is the number of elements the block takes
+// from the stack it runs on and `outputs' is the number of elements it
+// leaves in their place.  The effect can be inferred only for blocks
+// made of literals and default words with a known, fixed effect.  
+// Blocks that use other words, run other blocks or work on the whole
+// stack have no inferred effect.  A block with an effect never needs 
+// more than `inputs' elements, so when that many are on the stack it
+// cannot underflow.  The effect is reported by the `stack-effect' 
+// word. 
+
+public final class StackEffect {
+
+    StackEffect (int inputs, int outputs, int version) {
+	this.inputs = inputs;
+	this.outputs = outputs;
+	this.version = version;
+    }
+
+    public int getInputs () {
+	return inputs;
+    }
+
+    public int getOutputs () {
+	return outputs;
+    }
+
+    public String toString () {
+	return "( " + inputs + " -- " + outputs + " )";
+    }
+
+    // Returns false if the effect could not be inferred. 
+
+    boolean isKnown () {
+	return (inputs >= 0);
+    }
+
+    // Infers the stack effect of `byteCodes' against the dictionary
+    // of `vm' at version `version'.  If the effect cannot be inferred,
+    // the result has negative inputs and outputs. 
+
+    static StackEffect analyze (ByteCodes byteCodes, Vm vm, int version) {
+	StackEffect unknown = new StackEffect (-1, -1, version);
+	int depth = 0;
+	int inputs = 0;
+	int count = byteCodes.size ();
+	for (int i = 0; i < count; ++i) {
+	    ByteCode bc = byteCodes.at (i);
+	    switch (bc.type) {
+	    case BOOLEAN:
+	    case INTEGER:
+	    case BIGINTEGER:
+	    case DOUBLE:
+	    case LONG:
+	    case STRING:
+	    case BLOCK:
+		++depth;
+		break;
+	    case FUSED:
+		// Has the effect of the byte codes that follow. 
+		break;
+	    case OPERATION:
+		{
+		    int opcode = bc.code;
+		    if (vm.isShadowed (opcode)
+			|| opcode >= effectInputs.length
+			|| effectInputs[opcode] < 0) {
+			return unknown;
+		    }
+		    int in = effectInputs[opcode];
+		    if (in - depth > inputs) {
+			inputs = in - depth;
+		    }
+		    depth += effectOutputs[opcode] - in;
+		    break;
+		}
+	    default:
+		return unknown;
+	    }
+	}
+	return new StackEffect (inputs, inputs + depth, version);
+    }
+
+    // Records the effect of a default word. 
+
+    private static void effect (int id, int inputs, int outputs) {
+	int opcode = DefaultWords.getOpcode (id);
+	effectInputs[opcode] = inputs;
+	effectOutputs[opcode] = outputs;
+    }
+
+    private final int inputs;
+    private final int outputs;
+    final int version;
+
+    // The effects of default words, indexed by opcode.  -1 marks words
+    // with no fixed effect. 
+    private static final int[] effectInputs;
+    private static final int[] effectOutputs;
+
+    static {
+	int n = DefaultWords.getOpcodeCount ();
+	effectInputs = new int[n];
+	effectOutputs = new int[n];
+	for (int i = 0; i < n; ++i) {
+	    effectInputs[i] = -1;
+	}
+
+	effect (DefaultWords.NEWLINE, 0, 0);
+	effect (DefaultWords.SPACE, 0, 0);
+	effect (DefaultWords.EMIT, 1, 0);
+	effect (DefaultWords.DOT, 1, 0);
+	effect (DefaultWords.DOT_NS, 1, 0);
+	effect (DefaultWords.DISCARD, 1, 0);
+	effect (DefaultWords.SELF, 0, 1);
+	effect (DefaultWords.SUPER, 0, 1);
+
+	effect (DefaultWords.ADD, 2, 1);
+	effect (DefaultWords.SUB, 2, 1);
+	effect (DefaultWords.MULT, 2, 1);
+	effect (DefaultWords.DIV, 2, 1);
+	effect (DefaultWords.MOD, 2, 1);
+	effect (DefaultWords.DIV_MOD, 2, 2);
+
+	effect (DefaultWords.EQUALS, 2, 1);
+	effect (DefaultWords.EQ, 2, 1);
+	effect (DefaultWords.LT, 2, 1);
+	effect (DefaultWords.GT, 2, 1);
+	effect (DefaultWords.LT_EQ, 2, 1);
+	effect (DefaultWords.GT_EQ, 2, 1);
+
+	effect (DefaultWords.AND, 2, 1);
+	effect (DefaultWords.OR, 2, 1);
+	effect (DefaultWords.NEGATE, 1, 1);
+
+	effect (DefaultWords.SWAP, 2, 2);
+	effect (DefaultWords.DUP, 1, 2);
+	effect (DefaultWords.OVER, 2, 3);
+	effect (DefaultWords.ROT, 3, 3);
+	effect (DefaultWords.DROP, 1, 0);
+	effect (DefaultWords.TWO_SWAP, 4, 4);
+	effect (DefaultWords.TWO_DUP, 2, 4);
+	effect (DefaultWords.TWO_OVER, 4, 6);
+	effect (DefaultWords.TWO_DROP, 2, 0);
+
+	effect (DefaultWords.STR_LEN, 1, 1);
+	effect (DefaultWords.STR_AT, 2, 1);
+	effect (DefaultWords.STR_EQ, 2, 1);
+	effect (DefaultWords.STR_EQI, 2, 1);
+	effect (DefaultWords.STR_TOLOWER, 1, 1);
+	effect (DefaultWords.STR_TOUPPER, 1, 1);
+	effect (DefaultWords.STR_TRIM, 1, 1);
+	effect (DefaultWords.SUBSTR, 3, 1);
+	effect (DefaultWords.STR_REPL, 3, 1);
+	effect (DefaultWords.STR_REPL_ALL, 3, 1);
+	effect (DefaultWords.STR_FIND, 2, 1);
+    }
+}
@@ -26,23 +26,25 @@
 package org.niue.vm;
 
 import java.util.Stack;
-import java.util.EmptyStackException;
-import java.util.Hashtable;
-import java.util.ArrayList;
-import java.io.InputStream;
-import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.io.StringReader;
 import java.io.PrintStream;
-import java.nio.charset.Charset;
 import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.niue.Niue;
 import org.niue.vm.operation.ByteCodeExecutor;
+import org.niue.vm.operation.Quick;
 
 // The simple Niue virtual machine.  Executes its own compiled
-// byte codes.  A virtual machine can have many child virtual machines
-// which could be executed in the same thread, or spawned to be 
-// executed in a separate thread.  N number of spawned virtual machines
-// do not take up N number of system threads, instead threads are shared.
+// byte codes.  Code blocks are compiled into CodeBlock objects and 
+// are run by the virtual machine that executes them.  A code block 
+// can be spawned to be executed by a child virtual machine in a 
+// separate process.  N number of spawned virtual machines do not 
+// take up N number of system threads, instead threads are shared.
 
 public final class Vm {
 
@@ -50,37 +52,67 @@ public final class Vm {
 
     public Vm (Niue niue) {
 	initVmOperations ();
+	Reclaimer.register (this);
         niue.addProcess (this.procId, this);
 	this.niue = niue;
-	dataStack = new Stack<DataStackElement> ();
-	makeRootVmStack ();
-    }
-
-    // Used to create a child virtual machine
-
-    private Vm (Vm parent, boolean hasNewStack) {
-	initVmOperations ();
+	dataStack = new DataStack ();
+	dictionaryChanged ();
+    }
+
+    // Used to create a child virtual machine that runs the code 
+    // block `block' in a new process.  It will have a new data
+    // stack, with the values of the parent's data stack copied.  The
+    // parent's data stack belongs to another thread, so the child 
+    // never touches it.  Pops that fall through to the parent are 
+    // served from a second copy instead.  See parentPop (). 
+
+    private Vm (Vm parent, CodeBlock block) {
+	// Operations are looked up in the parent until the child adds
+	// its own, so that the two resolve words alike while they share
+	// a dictionary version. 
+	vmOperations = new IVmOperation[0];
+	Reclaimer.register (this);
 	parentVm = parent;
 	niue = parentVm.niue;
-	this.hasNewStack = hasNewStack;
-	if (!hasNewStack) {
-	    dataStack = parentVm.dataStack;
-	} else {
-	    dataStack = new Stack<DataStackElement> ();
-	}
-	vmStack = parentVm.vmStack;
+	dataStack = createFrom (parent.dataStack);
+	parentStack = createFrom (parent.dataStack);
+	byteCodes = block.getByteCodes ();
+	spawned = true;
 	out = parent.out;
+	mailboxCapacity = parent.mailboxCapacity;
+    }
+
+    // Used to create an independent copy of the virtual machine 
+    // `source'.  The copy gets its own data stack, but shares the 
+    // variables and operations tables with `source' until either of 
+    // them changes its table.  See snapshot () and fork (). 
+
+    private Vm (Vm source) {
+	Reclaimer.register (this);
+	niue = source.niue;
+	parentVm = source.parentVm;
+	out = source.out;
+	dataStack = createFrom (source.dataStack);
+	version = source.version;
+	shadowed = source.shadowed;
+	if (source.parentStack != null) {
+	    parentStack = createFrom (source.parentStack);
+	}
+	vmOperations = source.vmOperations;
+	vars = source.vars;
+	sharedVars = true;
+	if (!source.sharedVars) source.sharedVars = true;
+	if (source.ownOperations) source.ownOperations = false;
     }
 
-    // Compiles and executes a token for the virtual machine
-    // that is on top of the global stack of virtual machines.
-    // There is no text interpretation.  All tokens are compiled
-    // before execution.  If the token represents a string or a 
-    // large number, it is interned into special tables for future
-    // reuse.  
+    // Compiles and executes a token.  There is no text interpretation.  
+    // All tokens are compiled before execution.  Tokens that appear 
+    // between block delimiters are added to the code block being 
+    // compiled.  If the token represents a string or a large number, 
+    // it is interned into special tables for future reuse.  
 
     public void execute (String token) throws VmException {
-	executeFor (vmStack.peek (), token);
+	executeFor (this, token);
     }
 
     // Runs the pre-compiled byte codes.
@@ -88,8 +120,34 @@ public final class Vm {
     public void run () throws VmException {
 	assertNotStopped (this);
 	if (byteCodes != null) {
-	    ByteCodeExecutor executor = new ByteCodeExecutor (byteCodes);
-	    executor.execute (this);
+	    enter ();
+	    try {
+		executor.run (this, byteCodes, false);
+	    } finally {
+		leave ();
+	    }
+	}
+    }
+
+    // Runs the pre-compiled byte codes of a spawned process for at
+    // most `reductions' byte codes, resuming where the last call left
+    // off.  Returns true once the byte codes are done.  Between two
+    // calls the process holds no thread.  See ProcessController. 
+
+    public boolean runSlice (int reductions) throws VmException {
+	assertNotStopped (this);
+	if (byteCodes == null) {
+	    return true;
+	}
+	enter ();
+	try {
+	    if (!started) {
+		started = true;
+		executor.start (this, byteCodes);
+	    }
+	    return executor.slice (this, reductions);
+	} finally {
+	    leave ();
 	}
     }
 
@@ -106,12 +164,82 @@ public final class Vm {
 
     public static void executeFor (Vm vm, String token) throws VmException {
 	assertNotStopped (vm);
+	vm.enter ();
 	try {
 	    vm.executeToken (token);		
 	} catch (Exception ex) {
+	    if (vm.recording != null) vm.recording.invalidate ();
 	    throw new VmException (ex);
+	} finally {
+	    vm.leave ();
+	}
+    }
+
+    // Runs the top-level byte codes of a cached file, as if its tokens
+    // were executed one by one.  Errors are reported on the output and
+    // do not stop the rest of the file.  See ModuleCache. 
+
+    public void replay (ByteCodes byteCodes) {
+	for (int i = 0; i < byteCodes.size () && !stopped; ++i) {
+	    ByteCode bc = byteCodes.at (i);
+	    enter ();
+	    try {
+		if (bc.type == ByteCode.Type.WORD) {
+		    currentToken = symbolTable.get (bc.code);
+		}
+		executeByteCode (bc);
+	    } catch (Exception ex) {
+		out.println (new VmException (ex).getMessage ());
+	    } finally {
+		leave ();
+	    }
 	}
     }
+
+    // Makes `r' the recording that top-level byte codes are added to,
+    // and returns the one it replaces.  A file loaded from within 
+    // another one gets its own recording, and the outer one is put 
+    // back when it is done. 
+
+    public ModuleCache.Recording setRecording (ModuleCache.Recording r) {
+	ModuleCache.Recording old = recording;
+	if (old != null && blockStack.size () != old.depth) {
+	    old.invalidate ();
+	}
+	if (r != null) {
+	    r.depth = blockStack.size ();
+	    if (r.depth > 0) r.invalidate ();
+	}
+	recording = r;
+	return old;
+    }
+
+    // Called by the interpreter loop between two byte codes.  If a
+    // collection of unreachable interned values was requested, the 
+    // collection can go on, since no value is held outside the roots:
+    // the operations that run code in a nested loop, like `!', `eval'
+    // and `load', hold only code blocks and Java strings meanwhile, 
+    // and the data stacks they replaced are kept by the frames of the
+    // return stack.  See Reclaimer. 
+    // An operation added by an application that runs code while it
+    // holds an interned value must keep the value on the data stack. 
+
+    public void safepoint () {
+	if (Reclaimer.isRequested () && active > 0) {
+	    Reclaimer.safepoint ();
+	}
+    }
+
+    // Reclaims the unreachable interned values now.  Must be called 
+    // from within the interpreter loop, see safepoint ().  Returns the 
+    // number of values reclaimed. 
+
+    public int reclaim () {
+	if (active == 0) {
+	    return 0;
+	}
+	return Math.max (Reclaimer.collectNow (), 0);
+    }
     
     // Adds a system operation to the virtual machines core set of words.  
     // A system operation is represented as an implementation of IVmOperation.  
@@ -122,7 +250,18 @@ public final class Vm {
     // these words to a new virtual machine.  
 
     public void addOperation (String name, IVmOperation opr) {
-	vmOperations.put (name.hashCode (), opr);
+	int id = internSymbol (name);
+	if (!ownOperations || id >= vmOperations.length) {
+	    IVmOperation[] ops = new IVmOperation[Math.max 
+						  (vmOperations.length, 
+						   id + 1)];
+	    System.arraycopy (vmOperations, 0, ops, 0, vmOperations.length);
+	    vmOperations = ops;
+	    ownOperations = true;
+	}
+	vmOperations[id] = opr;
+	shadow (id, true);
+	dictionaryChanged ();
     }	
 
     // Redirects the virtual machines output stream.  Errors and messages
@@ -144,20 +283,22 @@ public final class Vm {
 	return stopped;
     }
 
-    // Returns a reference to the virtual machine's data stack. 
+    // Returns a List view of the virtual machine's data stack. 
+    // The elements of the list are created on demand, so words 
+    // that run often should prefer the primitive accessors like 
+    // typeAt (), valueAt () and pick (). 
 
-    public Stack<DataStackElement> getDataStack () {
-	return dataStack;
+    public List<DataStackElement> getDataStack () {
+	return dataStackView;
     }
 
     // Returns the element at the top of the data stack. 
 
     public DataStackElement peek () throws VmException {
-	try {
-	    return dataStack.peek ();
-	} catch (EmptyStackException ex) {
+	if (dataStack.isEmpty ()) {
 	    throw new VmException (EMPTY_STACK_MSG);
 	}
+	return dataStack.elementAt (dataStack.size () - 1, this);
     }
 
     // Returns the element at the position `i' of the data stack.  
@@ -165,7 +306,50 @@ public final class Vm {
 
     public DataStackElement at (int i) throws VmException {
 	try {
-	    return dataStack.elementAt (normalizeIndex (i));
+	    return dataStack.elementAt (normalizeIndex (i), this);
+	} catch (ArrayIndexOutOfBoundsException ex) {
+	    throw new VmException ("Invalid stack index.");
+	}
+    }
+
+    // Returns the type of the element at the position `i' of the
+    // data stack, without creating a DataStackElement.  Returns
+    // null if `i' is not a valid index. 
+
+    public ByteCode.Type typeAt (int i) {
+	int idx = normalizeIndex (i);
+	if (idx < 0 || i < 0) return null;
+	return dataStack.type (idx);
+    }
+
+    // Returns the value of the element at the position `i' of the
+    // data stack, without creating a DataStackElement. 
+
+    public int valueAt (int i) throws VmException {
+	int idx = normalizeIndex (i);
+	if (idx < 0 || i < 0) {
+	    throw new VmException ("Invalid stack index.");
+	}
+	return dataStack.value (idx);
+    }
+
+    // Pushes a copy of the element at the position `i' of
+    // the data stack. 
+
+    public void pick (int i) throws VmException {
+	int idx = normalizeIndex (i);
+	if (idx < 0 || i < 0) {
+	    throw new VmException ("Invalid stack index.");
+	}
+	dataStack.dup (idx);
+    }
+
+    // Swaps the elements at the positions `i' and `j' of the 
+    // data stack. 
+
+    public void exchange (int i, int j) throws VmException {
+	try {
+	    dataStack.exchange (normalizeIndex (i), normalizeIndex (j));
 	} catch (ArrayIndexOutOfBoundsException ex) {
 	    throw new VmException ("Invalid stack index.");
 	}
@@ -199,11 +383,14 @@ public final class Vm {
     // interned like strings or large numbers. 
     
     public int popInteger () throws VmException {
-	DataStackElement elem = pop ();
-	if (elem.getType () != ByteCode.Type.INTEGER) {
+	DataStack s = popStack ();
+	ByteCode.Type type = s.topType ();
+	int i = s.topValue ();
+	s.drop ();
+	if (type != ByteCode.Type.INTEGER) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
-	return elem.getElement ();
+	return i;
     }    
 
     // Pops an element from the data stack.  Throws an exception if
@@ -222,11 +409,14 @@ public final class Vm {
     // if the element is a boolean, throws an exception otherwise. 
 
     public boolean popBoolean () throws VmException {
-	DataStackElement elem = pop ();
-	if (elem.getType () != ByteCode.Type.BOOLEAN) {
+	DataStack s = popStack ();
+	ByteCode.Type type = s.topType ();
+	int b = s.topValue ();
+	s.drop ();
+	if (type != ByteCode.Type.BOOLEAN) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
-	return (elem.getElement () == 1 ? true : false);
+	return (b == 1 ? true : false);
     }
 
     // Pops an element from the data stack, which should represent
@@ -240,15 +430,56 @@ public final class Vm {
 	return (BigInteger) getNumber (elem.getElement ());
     }
 
+    // Returns the value of an integral element as a BigInteger.  A 
+    // BIGINTEGER is fetched from the number table, while INTEGERs and 
+    // LONGs are converted from the stack slot. 
+
+    public BigInteger toBigInteger (DataStackElement elem) 
+	throws VmException {
+	switch (elem.getType ()) {
+	case BIGINTEGER:
+	    return (BigInteger) getNumber (elem.getElement ());
+	case INTEGER:
+	case LONG:
+	    return BigInteger.valueOf (elem.getLong ());
+	default:
+	    VmException.raiseUnexpectedValueOnStack ();
+	    return null;
+	}
+    }
+
     // Pops an element from the data stack, which should represent
     // a Double.
 
     public Double popDouble () throws VmException {
-	DataStackElement elem = pop ();
-	if (elem.getType () != ByteCode.Type.DOUBLE) {
+	return Double.valueOf (popDoubleValue ());
+    }
+
+    // Pops a double from the data stack, without boxing it.  Doubles
+    // are stored in the stack slot, so they need not be looked up. 
+
+    public double popDoubleValue () throws VmException {
+	DataStack s = popStack ();
+	ByteCode.Type type = s.topType ();
+	long bits = s.topLongValue ();
+	s.drop ();
+	if (type != ByteCode.Type.DOUBLE) {
+	    VmException.raiseUnexpectedValueOnStack ();
+	}
+	return Double.longBitsToDouble (bits);
+    }
+
+    // Pops an integer or a long from the data stack. 
+
+    public long popLong () throws VmException {
+	DataStack s = popStack ();
+	ByteCode.Type type = s.topType ();
+	long l = s.topLongValue ();
+	s.drop ();
+	if (type != ByteCode.Type.LONG && type != ByteCode.Type.INTEGER) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
-	return (Double) getNumber (elem.getElement ());
+	return l;
     }
 
     // Pops an element from the data stack, which should represent
@@ -268,51 +499,360 @@ public final class Vm {
 	dataStack.push (elem);
     }
 
+    // Pushes an element sent by another process.  The data stack
+    // is only touched by the thread running this virtual machine, 
+    // so the element is queued in an inbox.  The inbox is moved to
+    // the data stack by receiveInbox ().
+
     public void syncedPush (DataStackElement elem) {
-        synchronized (this) {
-            dataStack.push (elem);
-        }
+	Runnable wake = null;
+	inboxLock.lock ();
+	try {
+	    if (inbox == null) {
+		inbox = new DataStack (INBOX_CAPACITY);
+	    }
+            inbox.push (elem);
+	    inboxChanged.signalAll ();
+	    wake = unpark ();
+        } finally {
+	    inboxLock.unlock ();
+	}
+	if (wake != null) wake.run ();
     }
 
-    // Pops a raw element from the data stack. 
+    // Waits until there are at least `count' elements on the data
+    // stack, counting the elements sent by other processes.  Sent 
+    // elements are moved to the data stack as they arrive, but no
+    // more than are needed, so that a bounded mailbox keeps holding 
+    // back the senders.  The waiting thread parks until a sender 
+    // signals it.  See await (). 
 
-    public DataStackElement pop () throws VmException {
+    public void receive (int count) throws VmException {
+	while (receiveInbox (count) < count) {
+	    await (new InboxWait (0));
+	}
+    }
+
+    // Like receive (), but a process that is run in slices by the 
+    // process scheduler does not hold on to its thread while it waits.
+    // Instead, `count' is left on the data stack, the process is 
+    // suspended so that the calling byte code runs again when it 
+    // resumes, and it is put back on the run queue when a message 
+    // arrives.  Must be called only by an operation that pops `count'
+    // and does nothing else before.  See ByteCodeExecutor.suspend (). 
+
+    public void receiveOrSuspend (int count) throws VmException {
+	if (wakeup == null || !executor.canSuspend ()) {
+	    receive (count);
+	    return;
+	}
+	inboxLock.lock ();
+	try {
+	    if (receiveInbox (count) >= count || mailboxClosed) {
+		return;
+	    }
+	    parked = true;
+	} finally {
+	    inboxLock.unlock ();
+	}
+	pushInteger (count);
+	executor.suspend ();
+    }
+
+    // Returns true if the process is suspended until a message 
+    // arrives.  See receiveOrSuspend (). 
+
+    boolean isParked () {
+	inboxLock.lock ();
 	try {
-	    return dataStack.pop ();
-	} catch (EmptyStackException ex) {
-            if (parentVm != null) {
-                return parentVm.pop ();
-            } else {
-                throw new VmException (EMPTY_STACK_MSG);
-            }
+	    return parked;
+	} finally {
+	    inboxLock.unlock ();
 	}
     }
 
+    // Sets the callback that puts the process back on the run queue 
+    // when it is suspended by receiveOrSuspend ().  Set by the process
+    // scheduler. 
+
+    void setWakeup (Runnable wakeup) {
+	this.wakeup = wakeup;
+    }
+
+    // Returns the wakeup callback to run if the process is suspended,
+    // and marks it as no longer suspended.  Called with `inboxLock'
+    // held.  The callback is run after the lock is released. 
+
+    private Runnable unpark () {
+	if (!parked) {
+	    return null;
+	}
+	parked = false;
+	return wakeup;
+    }
+    // Sends the top `count' elements of the data stack to the process
+    // `target'.  If its mailbox is bounded and has no room for them,
+    // waits till the target has received enough, or returns false at 
+    // once if `wait' is false.  A message is always taken by an empty 
+    // mailbox, so a message larger than the capacity does not wait 
+    // forever.  Sending to a process that has exited raises an error, 
+    // or returns false if `wait' is false.  The elements are left on
+    // the data stack if they were not sent. 
+
+    public boolean send (Vm target, int count, boolean wait) 
+	throws VmException {
+	if (count <= 0) {
+	    return true;
+	}
+	if (target == this) {
+	    // A process cannot wait for itself to make room. 
+	    for (int i = 0; i < count; ++i) {
+		syncedPush (pop ());
+	    }
+	    return true;
+	}
+	if (wait) {
+	    await (target.new InboxWait (count));
+	}
+	DataStackElement[] elems = new DataStackElement[count];
+	int popped = 0;
+	boolean sent = false;
+	try {
+	    for (; popped < count; ++popped) {
+		elems[popped] = pop ();
+	    }
+	    // The elements are held outside the data stack now, so this 
+	    // wait is not a safe point.  It only happens if another sender
+	    // filled the mailbox meanwhile. 
+	    sent = target.post (elems, wait);
+	    return sent;
+	} finally {
+	    if (!sent) {
+		for (int i = popped - 1; i >= 0; --i) {
+		    push (elems[i]);
+		}
+	    }
+	}
+    }
+
+    // Sets the number of elements that the mailbox of this process 
+    // can hold before senders have to wait.  Zero means no limit.  A 
+    // spawned process starts with the capacity of its parent.
+
+    public void setMailboxCapacity (int capacity) {
+	inboxLock.lock ();
+	try {
+	    mailboxCapacity = Math.max (capacity, 0);
+	    inboxChanged.signalAll ();
+	} finally {
+	    inboxLock.unlock ();
+	}
+    }
+
+    // Waits on `w'.  See block (). 
+
+    private void await (InboxWait w) throws VmException {
+	if (w.isReleasable ()) {
+	    return;
+	}
+	try {
+	    block (w);
+	} catch (InterruptedException ex) {
+	    Thread.currentThread ().interrupt ();
+	    throw new VmException ("Error while waiting for data on stack");
+	}
+    }
+
+    // Blocks the thread running the virtual machine on `blocker'.  The
+    // virtual machine is at a safe point while it waits, so it does not
+    // hold up a collection.  See safepoint ().  The wait is made known
+    // to the process scheduler, which can start another worker thread 
+    // for the runnable processes meanwhile.  Operations that wait, for
+    // time or for something outside the virtual machine, should wait 
+    // through this method. 
+
+    public void block (ForkJoinPool.ManagedBlocker blocker) 
+	throws InterruptedException {
+	boolean safe = (active > 0);
+	if (safe) Reclaimer.leave ();
+	try {
+	    ForkJoinPool.managedBlock (blocker);
+	} finally {
+	    if (safe) Reclaimer.enter ();
+	}
+    }
+
+    // Queues the elements `elems' in the mailbox, in order, if it has 
+    // room for them.  Otherwise waits for room, or returns false if 
+    // `wait' is false. 
+
+    private boolean post (DataStackElement[] elems, boolean wait) 
+	throws VmException {
+	Runnable wake = null;
+	inboxLock.lock ();
+	try {
+	    while (!hasRoom (elems.length)) {
+		if (!wait) {
+		    return false;
+		}
+		inboxChanged.await ();
+	    }
+	    if (mailboxClosed) {
+		if (!wait) {
+		    return false;
+		}
+		throw new VmException ("Process " + procId + " has exited.");
+	    }
+	    if (inbox == null) {
+		inbox = new DataStack (INBOX_CAPACITY);
+	    }
+	    for (int i = 0; i < elems.length; ++i) {
+		inbox.push (elems[i]);
+	    }
+	    inboxChanged.signalAll ();
+	    wake = unpark ();
+	} catch (InterruptedException ex) {
+	    Thread.currentThread ().interrupt ();
+	    throw new VmException ("Error while waiting for data on stack");
+	} finally {
+	    inboxLock.unlock ();
+	}
+	if (wake != null) wake.run ();
+	return true;
+    }
+
+    // Closes the mailbox of a process that has exited or was stopped.
+    // Senders waiting for room are woken up, and no more messages are
+    // taken.  A suspended process is woken up too, so that it can 
+    // stop.  See ProcessController. 
+
+    public void closeMailbox () {
+	Runnable wake = null;
+	inboxLock.lock ();
+	try {
+	    mailboxClosed = true;
+	    inboxChanged.signalAll ();
+	    wake = unpark ();
+	} finally {
+	    inboxLock.unlock ();
+	}
+	if (wake != null) wake.run ();
+    }
+
+    // Returns true if the mailbox can take `count' more elements, or
+    // if it is closed, so that a waiting sender stops waiting.  
+    // Called with `inboxLock' held. 
+
+    private boolean hasRoom (int count) {
+	return (mailboxClosed || mailboxCapacity == 0 
+		|| inbox == null || inbox.isEmpty ()
+		|| inbox.size () + count <= mailboxCapacity);
+    }
+
+    // Waits for elements to arrive in the inbox or, if `room' is not
+    // zero, for the inbox to have room for that many. 
+
+    private final class InboxWait implements ForkJoinPool.ManagedBlocker {
+	InboxWait (int room) {
+	    this.room = room;
+	}
+
+	public boolean block () throws InterruptedException {
+	    inboxLock.lock ();
+	    try {
+		if (!isReleasable ()) {
+		    inboxChanged.await ();
+		}
+		return isReleasable ();
+	    } finally {
+		inboxLock.unlock ();
+	    }
+	}
+
+	public boolean isReleasable () {
+	    inboxLock.lock ();
+	    try {
+		if (room > 0) {
+		    return hasRoom (room);
+		}
+		return (inbox != null && !inbox.isEmpty ());
+	    } finally {
+		inboxLock.unlock ();
+	    }
+	}
+
+	private final int room;
+    }
+
+    // Moves the elements queued by syncedPush () to the data stack, 
+    // oldest first, until the data stack has `count' elements or the 
+    // inbox is empty.  Senders waiting for room are signalled.  Returns
+    // the size of the data stack. 
+
+    public int receiveInbox (int count) {
+	inboxLock.lock ();
+	try {
+	    int n = count - dataStack.size ();
+	    if (n > 0 && inbox != null && !inbox.isEmpty ()) {
+		dataStack.transferFrom (inbox, n);
+		if (mailboxCapacity > 0) inboxChanged.signalAll ();
+	    }
+	} finally {
+	    inboxLock.unlock ();
+	}
+	return dataStack.size ();
+    }
+
+    // Pops a raw element from the data stack. 
+
+    public DataStackElement pop () throws VmException {
+	DataStack s = popStack ();
+	DataStackElement elem = s.elementAt (s.size () - 1, this);
+	s.drop ();
+	return elem;
+    }
+
+    // Removes the top element of the data stack, without
+    // creating a DataStackElement for it. 
+
+    public void drop () throws VmException {
+	popStack ().drop ();
+    }
+
     // Returns the top element of the data stack, without
     // removing it. 
 
     public DataStackElement top () throws VmException {
-        int sz = dataStack.size ();
-        if (sz == 0) {
-            throw new VmException (EMPTY_STACK_MSG);
-        }
-        return dataStack.get (sz - 1);
+	return peek ();
+    }
+
+    // Pops a value that the parent had on its data stack when this
+    // process was spawned.  Used by `>>'. 
+
+    public DataStackElement parentPop () throws VmException {
+	if (parentStack == null || parentStack.isEmpty ()) {
+	    throw new VmException (EMPTY_STACK_MSG);
+	}
+	DataStackElement elem = 
+	    parentStack.elementAt (parentStack.size () - 1, this);
+	parentStack.drop ();
+	return elem;
     }
 
     // Pops a raw element from the data stack.  Does not
     // look in the parent dataStack.
 
     public DataStackElement localPop (boolean synced) throws VmException {
-	try {
-            if (synced) {
-                synchronized (this) {
-                    return dataStack.pop ();
-                }
-            } else {
-                return dataStack.pop ();
-            }
-	} catch (EmptyStackException ex) {
-            throw new VmException (EMPTY_STACK_MSG);
+	if (synced) {
+	    inboxLock.lock ();
+	    try {
+		receiveInbox (1);
+		return localPop ();
+	    } finally {
+		inboxLock.unlock ();
+	    }
+	} else {
+	    return localPop ();
 	}
     }
 
@@ -326,11 +866,80 @@ public final class Vm {
     // the data stack and the variables table with the parent.  
 
     public void executeWord (int wordId) throws VmException {
-	if (!executeVar (wordId)) {
+	DataStackElement var = getVar (wordId);
+	if (var != null) {
+	    executeVar (var);
+	} else {
 	    IVmOperation opr = getOperation (wordId);
 	    if (opr == null) {
 		throw new VmException ("Invalid VM operation - " + currentToken);
 	    }
+	    executor.execute (this, opr);
+	}
+    }
+
+    // Schedules the word identified by `wordId' to be executed by
+    // the interpreter loop, followed by `then'.  See call (). 
+
+    public void callWord (int wordId, IVmOperation then) 
+	throws VmException {
+	DataStackElement var = getVar (wordId);
+	if (var != null && var.getType () == ByteCode.Type.BLOCK) {
+	    call (var.getBlock (), then);
+	} else {
+	    executeWord (wordId);
+	    executor.call (this, null, false, then);
+	}
+    }
+
+    // Executes a compiled word.  The variable or operation that the 
+    // word refers to is looked up only once and cached in the byte code.
+    // The lookup is repeated only if the dictionary has changed since,
+    // i.e. a variable was added or removed or an operation was added, 
+    // or if the byte code is run by a virtual machine with a different
+    // dictionary. 
+    // Assigning a new value to an existing variable updates its slot 
+    // and does not invalidate the cached targets. 
+
+    private void executeWord (ByteCode bc) throws VmException {
+	ByteCode.WordTarget target = bc.target;
+	if (target == null || target.version != dictionaryVersion ()) {
+	    target = resolveWord (bc.code);
+	    bc.target = target;
+	}
+	if (target.var != null) {
+	    callVar (target.var.get ());
+	} else if (target.opr != null) {
+	    target.opr.execute (this);
+	} else {
+	    throw new VmException ("Invalid VM operation - " + currentToken);
+	}
+    }
+
+    // Executes a default word compiled to an OPERATION byte code.  The
+    // operation is found by indexing the opcode table.  If the word has
+    // been redefined, the byte code is executed like a normal word.
+    // Arithmetic and comparison byte codes are quickened to a variant
+    // specialized for the operand types seen on their first execution.
+    // When the types change, the byte code reverts to the generic 
+    // operation.  See Quick. 
+
+    private void executeOperation (ByteCode bc) throws VmException {
+	int opcode = bc.code;
+	if (isShadowed (opcode)) {
+	    callWord (DefaultWords.getSymbol (opcode), null);
+	    return;
+	}
+	IVmOperation opr = DefaultWords.getOperation (opcode);
+	Quick quick = bc.quick;
+	if (quick == null) {
+	    quick = Quick.select (opr, this);
+	    bc.quick = quick;
+	}
+	if (!quick.execute (this)) {
+	    if (quick != Quick.GENERIC) {
+		bc.quick = Quick.GENERIC;
+	    }
 	    opr.execute (this);
 	}
     }
@@ -383,15 +992,18 @@ public final class Vm {
 	    }
 	case INTEGER:
 	    return Integer.toString (elem.getElement ());
-	case BIGINTEGER:
+	case LONG:
+	    return Long.toString (elem.getLong ());
 	case DOUBLE:
+	    return Double.toString (elem.getDouble ());
+	case BIGINTEGER:
 	    return getNumber (elem.getElement ()).toString ();
 	case STRING:
 	    return getString (elem.getElement ());
         case OBJECT:
             return getObject (elem.getElement ()).toString ();
-	case VM:
-	    return getVm (elem.getElement ()).toString ();
+	case BLOCK:
+	    return elem.getBlock ().toString ();
 	}
 	return "";
     }
@@ -418,9 +1030,19 @@ public final class Vm {
 	push (i, ByteCode.Type.INTEGER);
     }
 
-    // Pushes a big integer or a double to the data stack. 
-    // Throws an exception if the number was not previously 
-    // interned. 
+    // Pushes a 64-bit integer to the data stack.  Values that fit 
+    // in 32 bits are pushed as INTEGERs, others as LONGs. 
+
+    public void pushLong (long l) {
+	if (l == (int) l) {
+	    push ((int) l, ByteCode.Type.INTEGER);
+	} else {
+	    dataStack.push (l, ByteCode.Type.LONG);
+	}
+    }
+
+    // Pushes a big integer to the data stack.  Throws an exception if
+    // the number was not previously interned. 
 
     public void pushNumber (int hc, ByteCode.Type type) 
 	throws VmException {
@@ -428,16 +1050,24 @@ public final class Vm {
 	push (hc, type);
     }
 
-    // Pushes a big integer or a double to the data stack. 
-    // There is an option to intern new numbers. 
+    // Pushes a number to the data stack.  Big integers are interned,
+    // if `intern' is true.  Doubles and longs are stored in the stack
+    // slot. 
 
     public void pushNumber (Number n, ByteCode.Type type,
 			    boolean intern) {
+	if (type == ByteCode.Type.DOUBLE) {
+	    pushDouble (n.doubleValue ());
+	    return;
+	} else if (type == ByteCode.Type.LONG) {
+	    pushLong (n.longValue ());
+	    return;
+	}
 	int hc = 0;
 	if (intern) {
-	    hc = internNumber (n);
+	    hc = numberTable.internValue (n);
 	} else {
-	    hc = n.hashCode ();
+	    hc = numberTable.lookup (n);
 	}
 	push (hc, type);
     }
@@ -451,7 +1081,13 @@ public final class Vm {
     // Pushes a double to the data stack. 
 
     public void pushDouble (Double d) {
-	pushNumber (d, ByteCode.Type.DOUBLE, true);
+	pushDouble (d.doubleValue ());
+    }
+
+    // Pushes a double to the data stack, without boxing it. 
+
+    public void pushDouble (double d) {
+	dataStack.push (Double.doubleToLongBits (d), ByteCode.Type.DOUBLE);
     }
 
     // Pushes a string to the data stack. 
@@ -475,9 +1111,9 @@ public final class Vm {
     public void pushString (String str, boolean intern) {
 	int hc = 0;
 	if (intern)
-	    hc = internString (str);
+	    hc = internString (str, false);
 	else
-	    hc = str.hashCode ();
+	    hc = symbolTable.lookup (str);
 	push (hc, ByteCode.Type.STRING);
     }
 
@@ -492,10 +1128,30 @@ public final class Vm {
     // interned and pushed. 
 
     public void executeByteCode (ByteCode bc) throws VmException {
+	executor.execute (this, bc);
+    }
+
+    // Executes a byte code from within the interpreter loop.  Code
+    // blocks run by the byte code are scheduled on the loop's return
+    // stack and are done only after this method returns.  Code that is
+    // not run by the interpreter loop should call executeByteCode (). 
+    // Returns the number of byte codes that follow `bc' and should be 
+    // skipped, which is non-zero only for FUSED byte codes. 
+
+    public int dispatch (ByteCode bc) throws VmException {
 	switch (bc.type) {
+	case FUSED:
+	    if (bc.site.isShadowed (this)) {
+		return 0;
+	    }
+	    bc.site.operation.execute (this);
+	    return bc.code;
+	case OPERATION:
+	    executeOperation (bc);
+	    break;
 	case WORD:
 	    {	
-		executeWord (bc.code);
+		executeWord (bc);
 		break;
 	    }
 	case BOOLEAN:
@@ -505,25 +1161,28 @@ public final class Vm {
 	    pushInteger (bc.code);
 	    break;
 	case BIGINTEGER:
-	case DOUBLE:
 	    pushNumber (bc.code, bc.type);
 	    break;
+	case DOUBLE:
+	case LONG:
+	    dataStack.push (bc.value, bc.type);
+	    break;
 	case STRING:
 	    pushString (bc.code);
 	    break;
-	case VM:
-	    pushVm (bc.code);
+	case BLOCK:
+	    pushBlock (bc.block);
 	    break;
 	}
+	return 0;
     }
 
     // Removes a variable mapping from the variables table. 
 
     public void forget (String varName) {
-	int hc = varName.hashCode ();
-	DataStackElement elem = vars.get (hc);
-	if (elem != null) {
-	    removeVar (hc, elem);
+	int hc = symbolTable.lookup (varName);
+	if (localVar (hc) != null) {
+	    removeVar (hc);
 	}
     }
 
@@ -531,7 +1190,10 @@ public final class Vm {
     // Also searches down the list of parents.
 
     public DataStackElement getVar (String varName) {				    
-	int hc = varName.hashCode ();
+	int hc = symbolTable.lookup (varName);
+	if (hc < 0) {
+	    return null;
+	}
 	return getVar (hc);
     }
 
@@ -546,58 +1208,201 @@ public final class Vm {
 	if (compilationMode) byteCodes = null;
     }
 
-    // Retrieves the virtual machine identified by vmId from the
-    // child vm table and executes it. 
+    // Runs a code block against this virtual machine.  A `[ ... ]' 
+    // block shares the data stack of the code that runs it.  A 
+    // `{ ... }' block is run on a new data stack, which falls back on
+    // the caller's data stack when it runs out of elements.  The words
+    // >> and << move elements between the two stacks. 
+
+    public void runBlock (CodeBlock block) throws VmException {
+	CompiledBlock code = compiledCode (block);
+	if (code != null) {
+	    executor.inline ();
+	    int ip = code.run (this);
+	    if (ip >= 0) {
+		executor.run (this, block.getByteCodes (), false, ip);
+	    }
+	} else {
+	    executor.run (this, block.getByteCodes (), block.hasNewStack ());
+	}
+    }
+
+    // Schedules a code block to be run by the interpreter loop as soon
+    // as the current operation returns, followed by the operation 
+    // `then', if it is not null.  This does not grow the Java stack, so
+    // operations that run blocks should prefer it over runBlock (),
+    // as the last thing they do.  
 
-    public void runChildVm (int vmId, boolean discard) 
+    public void call (CodeBlock block, IVmOperation then) 
 	throws VmException {
-	Vm vm = getVm (vmId);
-	if (vm == null) {
-	    throw new VmException ("Failed to get VM.");
+	CompiledBlock code = compiledCode (block);
+	if (code != null) {
+	    executor.inline ();
+	    int ip = code.run (this);
+	    if (ip >= 0) {
+		executor.call (this, block.getByteCodes (), false, then, ip);
+	    } else {
+		executor.call (this, null, false, then);
+	    }
+	} else {
+	    executor.call (this, block.getByteCodes (), 
+			   block.hasNewStack (), then);
 	}
-	if (!vm.hasNewStack) {
-	    vm.dataStack = this.dataStack;
+    }
+
+    // Returns the compiled code of a block, if it is hot enough to be
+    // run as JVM code.  The invocations of the block are counted and 
+    // the block is compiled once it has been run often enough.  
+    // Compiled code is shared by the virtual machines that see the same
+    // dictionary.  Code compiled against another dictionary, or one that
+    // has changed since, is discarded and the block goes back to the 
+    // interpreter.  A block that cannot be compiled is not tried again
+    // until the dictionary changes. 
+    // Compiled code never runs other blocks, so it can be run directly
+    // by call ().
+
+    private CompiledBlock compiledCode (CodeBlock block) {
+	if (!BlockCompiler.ENABLED) {
+	    return null;
 	}
-	vm.run ();
-	if (discard) {
-	    discardChildVm (vm, vmId);
+	CompiledBlock code = block.compiled;
+	if (code != null) {
+	    if (code.isValid (this)) {
+		return code;
+	    }
+	    block.compiled = null;
+	    block.invocations = 0;
+	}
+	int version = dictionaryVersion ();
+	int failed = block.uncompilable;
+	if (failed == -1 || failed == version) {
+	    return null;
 	}
+	if (++block.invocations < BlockCompiler.THRESHOLD) {
+	    return null;
+	}
+	block.invocations = 0;
+	code = BlockCompiler.compile (block, this, version);
+	block.compiled = code;
+	return code;
     }
 
-    // Removes a child from the virtual machines table.
+    // Switches to a new data stack for running a `{ ... }' block.  
+    // Returns the data stack of the caller, which should be passed to
+    // restoreDataStack () when the block is done. 
 
-    public void discardChildVm (int vmId) {
-	Vm vm = vmTable.get (vmId);
-	discardChildVm (vm, vmId);	
+    public DataStack newDataStack () {
+	DataStack callerStack = dataStack;
+	dataStack = new DataStack ();
+	dataStack.outer = callerStack;
+	return callerStack;
     }
 
-    // Returns the id to which this virtual machine is mapped
-    // in the vmTable.  Not valid for the root virtual machine
-    // which is not mapped.
+    // Switches back to the data stack of the caller of a `{ ... }' 
+    // block. 
 
-    public int getVmId () {
-	return virtualMachineId;
+    public void restoreDataStack (DataStack callerStack) {
+	dataStack = callerStack;
     }
 
-    // Adds a variable mapping.  A child, if not running as a different
-    // process, can modify mappings in the parent's variables table.  This
-    // rule is not applicable for mapped code blocks.  If `strict' is true,
-    // the variable is mapped only if it does not already exist. 
+    // Returns the code block at the position `i' of the data stack,
+    // or null if that element is not a code block. 
 
-    public void putVar (int hc, DataStackElement var, boolean strict) {
-	if (strict) {
-	    if (vars.get (hc) != null) return;
+    public CodeBlock blockAt (int i) throws VmException {
+	if (typeAt (i) != ByteCode.Type.BLOCK) {
+	    return null;
 	}
-	boolean put = false;
-	if (parentVm == null) {
-	    put = true;
+	return (CodeBlock) dataStack.ref (normalizeIndex (i));
+    }
+
+    // Pushes a code block to the data stack. 
+
+    public void pushBlock (CodeBlock block) {
+	dataStack.pushRef (block, ByteCode.Type.BLOCK);
+    }
+
+    // Moves elements from the data stack of the innermost `{ ... }'
+    // block being run to the data stack of its caller.  Moves all the
+    // elements if `all' is true, only the top element otherwise. 
+    // Returns false if no such block is running. 
+
+    public boolean pushToOuterStack (boolean all) {
+	DataStack outer = dataStack.outer;
+	if (outer == null) {
+	    return false;
+	}
+	while (!dataStack.isEmpty ()) {
+	    outer.pushFrom (dataStack, dataStack.size () - 1);
+	    dataStack.drop ();
+	    if (!all) break;
+	}
+	return true;
+    }
+
+    // Moves elements from the data stack of the caller of the 
+    // innermost `{ ... }' block being run to the block's data stack. 
+    // Returns false if no such block is running. 
+
+    public boolean popFromOuterStack (boolean all) {
+	DataStack outer = dataStack.outer;
+	if (outer == null) {
+	    return false;
+	}
+	while (!outer.isEmpty ()) {
+	    dataStack.pushFrom (outer, outer.size () - 1);
+	    outer.drop ();
+	    if (!all) break;
+	}
+	return true;
+    }
+
+    // Adds a variable mapping.  Code blocks map variables in the 
+    // virtual machine that runs them.  A spawned virtual machine can 
+    // read the variables of its parent, but its own mappings are kept
+    // local to its process.  If `strict' is true, the variable is 
+    // mapped only if it does not already exist. 
+
+    public void putVar (int hc, DataStackElement var, boolean strict) {
+	ownVars ();
+	VarSlot slot = localVar (hc);
+	if (slot != null) {
+	    if (!strict) {
+		boolean wasBlock 
+		    = (slot.get ().getType () == ByteCode.Type.BLOCK);
+		slot.set (varValue (var));
+		// Compiled code pushes a variable that is not a block and 
+		// calls one that is, so it has to be recompiled when the 
+		// variable changes from one kind to the other. 
+		if (wasBlock != (var.getType () == ByteCode.Type.BLOCK)) {
+		    dictionaryChanged ();
+		}
+	    }
 	} else {
-	    if (!spawned) put = !parentVm.updateVar (hc, var);
-	    else put = true;		
+	    if (vars == null || hc >= vars.length) {
+		growVars (hc);
+	    }
+	    vars[hc] = newVarSlot (var);
+	    shadow (hc, true);
+	    dictionaryChanged ();
 	}
-	if (put) {
-	    vars.put (hc, var);
-	}    
+    }
+
+    // Captures the dictionary, variables and data stack of this 
+    // virtual machine.  Virtual machines forked from the snapshot
+    // start from that state, and changes made by this virtual machine 
+    // afterwards are not seen by them.  The interned pools are global
+    // and are shared as they are. 
+
+    public Snapshot snapshot () {
+	return new Snapshot (new Vm (this));
+    }
+
+    // Returns a new virtual machine that starts from the current state
+    // of this one.  The two are independent: a variable defined by one
+    // of them is not seen by the other. 
+
+    public Vm fork () {
+	return new Vm (this);
     }
 
     // Returns a reference to the parent. 
@@ -606,22 +1411,20 @@ public final class Vm {
         return parentVm;
     }
 
-    // Runs a child virtual machine in a new process.  It will
-    // have a new data stack, with the values of the parent's data
+    // Runs a code block in a new process.  The child virtual machine
+    // will have a new data stack, with the values of the parent's data
     // stack copied.  A unique process ID is pushed to the parent's
     // data stack.  This ID can be used to push values to the child's
     // stack using the << and >> special operators.  Thus Niue supports
     // basic inter-process communication. 
 
-    public void spawn (int vmId) {
-	Vm vm = vmTable.get (vmId);
-	vm.prepareForSpawning (this);
-        if (procController == null || !procController.isAlive ()) {
+    public void spawn (CodeBlock block) {
+	Vm vm = new Vm (this, block);
+        if (procController == null || procController.isShutdown ()) {
             procController = new ProcessController (this);
         }
-        int procId = procController.add (vm);
         // The new process is mapped into a process table.  
-        niue.addProcess (procId, vm);
+        int procId = procController.add (vm);
         pushInteger (procId);
     }
 
@@ -645,7 +1448,7 @@ public final class Vm {
 
     // Re-maps the data stack.  Used for inter-process communication. 
 
-    public void setTempDataStack (Stack<DataStackElement> stack) {
+    public void setTempDataStack (DataStack stack) {
         if (stack == null) {
             dataStack = oldDataStack;
             oldDataStack = null;
@@ -668,46 +1471,10 @@ public final class Vm {
 	return niue;
     }
 
-    // Pushes a virtual machines ID to the stack, after
-    // interning it. 
-
-    public void pushVm (Vm vm) {
-	int vmId = internVm (vm);
-	if (compilationMode) {
-	    addByteCode (new ByteCode (ByteCode.Type.VM, vmId));
-	} else {
-	    pushVm (vmId);
-	}
-    }
-
-    // Returns the child virtual machine identified by `hc'. 
-
-    public Vm getVm (int hc) {
-	Vm vm = vmTable.get (hc);
-	if (vm == null) {
-	    if (parentVm != null) {
-		vm = parentVm.getVm (hc);
-	    }
-	}
-	return vm;
-    }
-
     // Evaluates a string within the context ot this virtual machine. 
 
     public void eval (String code) throws VmException {
-	InputStream is = new ByteArrayInputStream (code.getBytes 
-						   (Charset.forName ("UTF-8")));
-	try {
-	    niue.run (this, is, out);
-	} catch (VmException ex) {
-	    throw ex;
-	} finally {
-	    if (is != null) {
-		try {
-		    is.close ();
-		} catch (java.io.IOException ex) { }
-	    }
-	}
+	niue.run (this, new StringReader (code), out);
     }
 
     // Returns true if this is a spawned vm. 
@@ -716,169 +1483,337 @@ public final class Vm {
         return spawned;
     }
 
-    private DataStackElement getVar (int id) {
-	DataStackElement elem = vars.get (id);
-	if (elem == null) {
+    DataStackElement getVar (int id) {
+	VarSlot slot = getSlot (id);
+	return (slot == null ? null : slot.get ());
+    }
+
+    // Returns the slot that holds the variable identified by `id'.  
+    // Also searches down the list of parents. 
+
+    VarSlot getSlot (int id) {
+	VarSlot slot = localVar (id);
+	if (slot == null) {
 	    if (parentVm != null) {
-		return parentVm.getVar (id);
+		return parentVm.getSlot (id);
 	    }
 	}
-	return elem;	
+	return slot;
+    }
+
+    // Removes a variable from the table.  Interned values can be
+    // shared by other variables and byte codes and are left in their
+    // tables. 
+
+    private void removeVar (int hc) {
+	ownVars ();
+	vars[hc] = null;
+	// The default word is visible again unless an operation also
+	// redefines it. 
+	int opcode = DefaultWords.getOpcode (hc);
+	if (opcode >= 0 && (hc >= vmOperations.length 
+			    || vmOperations[hc] 
+			    == DefaultWords.getOperation (opcode))) {
+	    shadow (hc, false);
+	}
+	dictionaryChanged ();
     }
 
-    // Updates the mapping of a variable.  If the variable is mapped in
-    // the parent virtual machine, that is updated. 
+    // Returns true if the default word compiled to `opcode' has been
+    // redefined by a variable or an operation in the dictionary of
+    // this virtual machine or of one of its parents. 
 
-    private boolean updateVar (int hc, DataStackElement var) {
-	if (vars.get (hc) != null) {
-	    vars.put (hc, var);
+    boolean isShadowed (int opcode) {
+	boolean[] s = shadowed;
+	if (s != null && s[opcode]) {
 	    return true;
+	}
+	return (parentVm != null && parentVm.isShadowed (opcode));
+    }
+
+    // Marks the default word identified by the symbol `id', if any, as
+    // redefined or no longer redefined.  Byte codes compiled to its
+    // opcode go through the normal word lookup while it is marked.  The 
+    // table is replaced rather than updated in place, because it is
+    // shared with forks and read by spawned processes. 
+
+    private void shadow (int id, boolean on) {
+	int opcode = DefaultWords.getOpcode (id);
+	if (opcode < 0) return;
+	boolean[] s = shadowed;
+	if (s == null) {
+	    if (!on) return;
+	    s = new boolean[DefaultWords.getOpcodeCount ()];
+	} else if (s[opcode] == on) {
+	    return;
 	} else {
-	    if (parentVm != null) {
-		return parentVm.updateVar (hc, var);
+	    s = s.clone ();
+	}
+	s[opcode] = on;
+	shadowed = s;
+    }
+
+    // Copies the variables table if it is shared with a snapshot or a
+    // forked virtual machine.  Variable slots are assigned in place, so
+    // the slots are copied along with the table.  Word targets cached
+    // against the shared slots are invalidated. 
+
+    private void ownVars () {
+	if (!sharedVars) return;
+	VarSlot[] v = vars;
+	if (v != null) {
+	    VarSlot[] copy = new VarSlot[v.length];
+	    for (int i = 0; i < v.length; ++i) {
+		if (v[i] != null) copy[i] = new VarSlot (v[i].get ());
 	    }
+	    vars = copy;
+	    dictionaryChanged ();
 	}
-	return false;
+	sharedVars = false;
     }
 
-    // Removes a variable from the table, including its interned value. 
+    // Returns the variable identified by `id' from the local
+    // variables table. 
 
-    private void removeVar (int hc, DataStackElement var) {
-	switch (var.getType ()) {
-	case BOOLEAN:
-	case INTEGER:
-	    break;
-	case STRING:
-	    stringTable.remove (hc);
-	    break;
-        case OBJECT:
-            objectTable.remove (hc);
-            break;
-	case BIGINTEGER:
-	case DOUBLE:
-	    numberTable.remove (hc);
-	    break;
-	case VM:
-	    findAndRemoveChildVm (hc);
-	    break;	 
+    private VarSlot localVar (int id) {
+	VarSlot[] v = vars;
+	if (v == null || id < 0 || id >= v.length) {
+	    return null;
 	}
-	vars.remove (hc);
+	return v[id];
     }
 
-    // Removes a child virtual machine from the table. 
+    // Returns the local variables table, indexed by symbol ID.  Entries
+    // of undefined variables are null.  See Image. 
 
-    private void discardChildVm (Vm vm, int vmId) {
-	if (parentVm == null && vm.parentVm == this) {
-	    if (!vmIsCopy (vm)) {
-		removeChildVm (vm, vmId);
-	    }
-	}
+    VarSlot[] localVars () {
+	return vars;
     }
 
-    // Removes a virtual machine associated with a variable. 
+    // Makes sure that the variables table can hold the symbol `id'.  
+    // The table at least doubles, so that defining many words in a 
+    // row does not copy it each time. 
 
-    private void findAndRemoveChildVm (int hc) {
-	DataStackElement elem = vars.get (hc);
-	if (elem != null && elem.getType () == ByteCode.Type.VM) {
-	    int vmId = elem.getElement ();
-	    removeChildVm (vmId);
+    private void growVars (int id) {
+	int len = Math.max (id + 1, symbolTable.size ());
+	if (vars != null) {
+	    len = Math.max (len, vars.length * 2);
 	}
+	VarSlot[] v = new VarSlot[len];
+	if (vars != null) {
+	    System.arraycopy (vars, 0, v, 0, vars.length);
+	}
+	vars = v;
     }
 
-    // Do the actual removal of the vm from the table. 
+    // Cleans up the virtual machine's data structures.
 
-    private void removeChildVm (int vmId) {
-	removeChildVm (vmTable.get (vmId), vmId);
+    private void cleanup () {
+        stopProcessController ();
+	vars = null;	
+	Reclaimer.unregister (this);
     }
 
-    // First removes all child vms of `vm', then remove `vm' itself
-    // from the table.
+    // Marks the values reachable from this virtual machine. 
 
-    private void removeChildVm (Vm vm, int vmId) {
-	if (vm != null) {
-	    for (Integer id : vm.childVmIds) {
-		removeChildVm (id);
+    void markRoots (Reclaimer r) {
+	for (DataStack s = dataStack; s != null; s = s.outer) {
+	    r.mark (s);
+	}
+	r.mark (oldDataStack);
+	r.mark (inbox);
+	r.mark (parentStack);
+	DataStack[] saved = executor.savedStacks ();
+	for (int i = 0; i < saved.length; ++i) {
+	    for (DataStack s = saved[i]; s != null; s = s.outer) {
+		r.mark (s);
 	    }
 	}
-	vm.cleanup ();
-	vmTable.remove (vmId);
-    }    
-
-    // Returns true if the vm object references another vm in the
-    // data stack.
-
-    private boolean vmIsCopy (Vm vm) {
-	int len = dataStack.size ();
-	for (int i = 0; i < len; ++i) {
-	    DataStackElement e = dataStack.elementAt (i);
-	    if (e.getType () == ByteCode.Type.VM) {
-		Vm exVm = vmTable.get (e.getElement ());
-		if (exVm != null) {
-		    if (exVm == vm) {
-			return true;
-		    }
+	VarSlot[] v = vars;
+	if (v != null) {
+	    for (int i = 0; i < v.length; ++i) {
+		if (v[i] != null) {
+		    DataStackElement value = v[i].get ();
+		    r.markSymbol (i);
+		    r.mark (value.getType (), value.getElement ());
 		}
 	    }
 	}
-	return false;
     }
 
-    // Cleans up the virtual machine's data structures.
+    // Marks the virtual machine as running code, for the reclaimer. 
 
-    private void cleanup () {
-        stopProcessController ();
-	vars.clear ();
-	vars = null;	
+    private void enter () {
+	if (active++ == 0) {
+	    Reclaimer.enter ();
+	}
+    }
+
+    private void leave () {
+	if (--active == 0) {
+	    Reclaimer.leave ();
+	}
     }
 
     // Stops the process controller. 
 
     private void stopProcessController () {
-        if (procController != null && procController.isAlive ()) {
+        if (procController != null) {
             procController.shutdown ();
-            try {
-                procController.yield ();
-                procController.join (10);
-            } catch (InterruptedException ex) { }
         }
     }
 
     // Pushes an identifier along with its type to the data stack.
 
     private void push (int hc, ByteCode.Type type) {
-	push (new DataStackElement (hc, type, this));
+	dataStack.push (hc, type);
     }
 
-    // Pushes an identifier along with its type to the data stack, in
-    // a thread-safe manner.
+    // Returns the data stack that the next pop should be taken from.
+    // If the local data stack is empty, elements received from other 
+    // processes are considered, then the data stacks of the callers of 
+    // `{ ... }' blocks and then the values the parent had when this 
+    // process was spawned. 
 
-    private void syncedPush (int hc, ByteCode.Type type) {
-        synchronized (this) {
-            push (new DataStackElement (hc, type, this));
-        }
+    private DataStack popStack () throws VmException {
+	if (!dataStack.isEmpty ()) {
+	    return dataStack;
+	}
+	if (inbox != null && receiveInbox (1) > 0) {
+	    return dataStack;
+	}
+	for (DataStack s = dataStack.outer; s != null; s = s.outer) {
+	    if (!s.isEmpty ()) {
+		return s;
+	    }
+	}
+	if (parentStack != null && !parentStack.isEmpty ()) {
+	    return parentStack;
+	}
+	throw new VmException (EMPTY_STACK_MSG);
     }
 
-    // If `varId' represents a variable, pushes its value to the stack.  
-    // If it represents a named block, executes the block. 
+    // Pops from the local data stack only.
 
-    private boolean executeVar (int varId) throws VmException {
-	DataStackElement var = getVar (varId);
-	if (var == null) {
-	    return false;
+    private DataStackElement localPop () throws VmException {
+	if (dataStack.isEmpty ()) {
+	    throw new VmException (EMPTY_STACK_MSG);
 	}
+	DataStackElement elem = dataStack.elementAt (dataStack.size () - 1, 
+						     this);
+	dataStack.drop ();
+	return elem;
+    }
 
-	if (var.getType () == ByteCode.Type.VM) {
-	    runChildVm (var.getElement (), false);
+    // If `var' is a simple value, pushes it to the stack.  If it is a
+    // named block, runs the block. 
+
+    private void executeVar (DataStackElement var) throws VmException {
+	if (var.getType () == ByteCode.Type.BLOCK) {
+	    runBlock (var.getBlock ());
 	} else {
 	    push (var);
 	}
-	return true;
+    }
+
+    // Like executeVar (), but a named block is scheduled on the 
+    // interpreter loop. 
+
+    private void callVar (DataStackElement var) throws VmException {
+	if (var.getType () == ByteCode.Type.BLOCK) {
+	    call (var.getBlock (), null);
+	} else {
+	    push (var);
+	}
+    }
+
+    // Resolves a word to the variable or operation it refers to in 
+    // the context of this virtual machine.  The dictionary version is
+    // read before the lookup, so that a concurrent change will make the
+    // returned target stale rather than wrongly current. 
+
+    private ByteCode.WordTarget resolveWord (int wordId) {
+	int version = dictionaryVersion ();
+	VarSlot var = getSlot (wordId);
+	IVmOperation opr = null;
+	if (var == null) {
+	    opr = getOperation (wordId);
+	}
+	return new ByteCode.WordTarget (version, var, opr);
+    }
+
+    // Creates the slot that holds the value of a variable.  Slots
+    // are assigned in place when the variable is assigned again, 
+    // so that resolved words can keep referring to them. 
+
+    private VarSlot newVarSlot (DataStackElement var) {
+	return new VarSlot (varValue (var));
+    }
+
+    // Copies `var' to a value that can be published in a slot.  The
+    // copy is not changed afterwards. 
+
+    private DataStackElement varValue (DataStackElement var) {
+	return new DataStackElement (var.getLong (), var.getType (), 
+				     var.getRef (), this);
+    }
+
+    // Returns the version of the dictionary of this virtual machine, 
+    // which changes whenever a variable is added or removed or an 
+    // operation is added.  Versions are unique across virtual machines,
+    // so two virtual machines have the same version only if they see 
+    // the same dictionary: a fork that still shares the tables of its
+    // source, or a spawned process that has not defined anything of 
+    // its own and so sees the dictionary of its parent.  A spawned 
+    // process that has, gets a new version when its parent's changes. 
+
+    int dictionaryVersion () {
+	DictionaryVersion v = version;
+	if (parentVm == null) {
+	    return v.stamp;
+	}
+	int p = parentVm.dictionaryVersion ();
+	if (v == null) {
+	    return p;
+	}
+	if (v.parent != p) {
+	    v = new DictionaryVersion (p);
+	    version = v;
+	}
+	return v.stamp;
+    }
+
+    // Invalidates the word targets and compiled code resolved against
+    // the dictionary of this virtual machine. 
+
+    private void dictionaryChanged () {
+	version = new DictionaryVersion 
+	    (parentVm == null ? 0 : parentVm.dictionaryVersion ());
+    }
+
+    // A dictionary version, along with the version of the parent's 
+    // dictionary it was derived from.  Immutable, so that the pair is 
+    // replaced atomically. 
+
+    private static final class DictionaryVersion {
+	DictionaryVersion (int parent) {
+	    this.parent = parent;
+	    this.stamp = stamps.incrementAndGet ();
+	}
+
+	final int parent;
+	final int stamp;
+
+	private static final AtomicInteger stamps = new AtomicInteger ();
     }
 
     // Returns the system operation identified by `id'. 
 
-    private IVmOperation getOperation (int id) {
-	IVmOperation opr = vmOperations.get (id);
+    IVmOperation getOperation (int id) {
+	IVmOperation opr = null;
+	if (id >= 0 && id < vmOperations.length) {
+	    opr = vmOperations[id];
+	}
 	if (opr == null) {
 	    if (parentVm != null) {
 		opr = parentVm.getOperation (id);
@@ -890,22 +1825,16 @@ public final class Vm {
     // Returns the string identified by `hc' from the string table. 
     
     private String getString (int hc) throws VmException {
-	String s = stringTable.get (hc);
+	String s = symbolTable.get (hc);
 	if (s == null)
 	    throw new VmException ("String was not interned.");
 	return s;
     }
 
-    // Returns a big integer or double from the number table. 
-    // If the number is not found, the parent vms are also searched. 
+    // Returns a big integer from the number table. 
 
     private Number getNumber (int hc) throws VmException {
 	Number n = numberTable.get (hc);
-	if (n == null) {
-	    if (parentVm != null) {
-		n = parentVm.getNumber (hc);
-	    }
-	}
 	if (n == null)
 	    throw new VmException ("Number was not interned.");
 	return n;
@@ -915,11 +1844,6 @@ public final class Vm {
 
     private Object getObject (int objId) throws VmException {
         Object obj = objectTable.get (objId);
-        if (obj == null) {
-	    if (parentVm != null) {
-		obj = parentVm.getNumber (objId);
-	    }
-        }
         if (obj == null) {
             throw new VmException ("Object was not interned.");
         }
@@ -933,42 +1857,42 @@ public final class Vm {
 
     private void executeToken (String token) throws VmException {
 	currentToken = token;
-	int hc = token.hashCode ();
-	if (hc == BLOCK_START || hc == BLOCK_START_NEW_STACK) {
-	    if (hc == BLOCK_START) {
-		blockStart (false);
-	    } else {
-		blockStart (true);
-	    }
-	} else if (hc == BLOCK_END || hc == BLOCK_END_NEW_STACK) {
+	char c = (token.length () == 1 ? token.charAt (0) : 0);
+	if (c == BLOCK_START || c == BLOCK_START_NEW_STACK) {
+	    blockStack.push (new CodeBlock (c == BLOCK_START_NEW_STACK));
+	} else if (c == BLOCK_END || c == BLOCK_END_NEW_STACK) {
 	    blockEnd ();	
 	} else {
-	    ByteCode bc = compileToken (token);
-	    if (compilationMode) {
-		addByteCode (bc);
-	    } else {
-		executeByteCode (bc);
-	    }
+	    emit (compileToken (token));
 	}
     }
 
-    // Deals with a block start.  Create a new Vm instance with
-    // compilation mode turned on and further tokens are re-directed 
-    // into it. 
+    // Pops the code block that was being compiled, optimizes it and 
+    // emits a byte code that pushes it. 
 
-    private void blockStart (boolean hasNewStack) {
-	Vm currentVm = new Vm (this, hasNewStack);
-	currentVm.setCompilationMode (true);
-	vmStack.push (currentVm);
+    private void blockEnd () throws VmException {
+	if (blockStack.isEmpty ()) {
+	    throw new VmException ("Unexpected end of block.");
+	}
+	CodeBlock block = blockStack.pop ();
+	Peephole.optimize (block);
+	emit (new ByteCode (block));
     }
 
-    // Pops the child Vm from the vmStack and adds it to the
-    // child vm list. 
+    // Adds a byte code to the code block being compiled, or to the
+    // byte codes list in compilation mode.  Otherwise, executes the
+    // byte code. 
 
-    private void blockEnd () {
-	Vm currentVm = vmStack.pop ();
-	currentVm.setCompilationMode (false);
-	parentVm.pushVm (currentVm);
+    private void emit (ByteCode bc) throws VmException {
+	if (!blockStack.isEmpty ()) {
+	    blockStack.peek ().add (bc);
+	} else if (compilationMode) {
+	    if (recording != null) recording.invalidate ();
+	    addByteCode (bc);
+	} else {
+	    if (recording != null) recording.add (bc);
+	    executeByteCode (bc);
+	}
     }
 
     // Adds a byte code to the byte codes list. 
@@ -979,118 +1903,75 @@ public final class Vm {
 	byteCodes.add (bc);
     }
 
-    // Checks if the token is the start of a string. 
-
-    private boolean isString (String token) {
-	return (token.charAt (0) == '\"');
-    }
-
-    // Checks if the token is a boolean value. 
-
-    private boolean isBoolean (String token) {
-	return (token.equals ("true") || token.equals ("false"));
-    }
-
-    // Tries to convert the token to an Integer.  If token
-    // cannot be parsed, null is returned. 
+    // Adds a string to the string table. 
 
-    private Integer parseInt (String token) {
-	if (VmNumber.hasLargeNumberPrefix (token))
-	    return null;
-	try {
-	    if (token.charAt (0) == '0' && token.length () > 1) {
-		char c = token.charAt (1);
-		if (c == 'x' || c == 'X')
-		    return Integer.parseInt (token.substring (2), 16);
-		else
-		    return Integer.parseInt (token, 8);
-	    }
-	    return Integer.parseInt (token);
-	} catch (NumberFormatException ex) {
-	    return null;
-	}
+    private int internString (String s) {
+	return internString (s, true);
     }
 
-    // Adds a string to the string table. 
+    // Adds a string to the string table.  A string that is not
+    // pinned can be reclaimed when it is no longer reachable. 
 
-    private int internString (String s) {
+    private int internString (String s, boolean pin) {
 	String str = s;
 	if (s.charAt (0) == '\"')
 	    str = s.substring (1, s.length () - 1);
-	int hc = str.hashCode ();
-	if (stringTable.get (hc) == null) {
-	    stringTable.put (hc, str);
-	    if (parentVm != null)
-		parentVm.internString (s);
+	if (pin) {
+	    return symbolTable.intern (str);
 	}
-	return hc;
+	return symbolTable.internValue (str);
     }
 
     // Adds an Object to the objectTable.  
 
     private int internObject (Object obj) {
-        if (objectId >= Integer.MAX_VALUE)
-            objectId = 0;
-        ++objectId;
-        objectTable.put (objectId, obj);
-        return objectId;
+        return objectTable.add (obj);
     }
 
     // Adds number to number table. 
 
     private int internNumber (Number n) {
-	int hc = n.hashCode ();
-	if (numberTable.get (hc) == null) {
-	    numberTable.put (hc, n);
-	    if (parentVm != null)
-		parentVm.internNumber (n);
-	}
-	return hc;
+	return numberTable.intern (n);
     }
 
-    // Adds a vm to the child vm table. 
+    // Returns the symbol ID of `name', adding it to the symbol table
+    // if needed.  
 
-    private synchronized int internVm (Vm vm) {	
-	if (childVmCount >= (Integer.MAX_VALUE - 1))
-	    childVmCount = 0;
-	int vmId = childVmCount++;
-	vm.virtualMachineId = vmId;
-	vmTable.put (vmId, vm);
-	childVmIds.add (vmId);
-	return vmId;
-    }
-
-    // Pushes an already interned virtual machine to the stack. 
-
-    private void pushVm (int vmId) {
-	push (vmId, ByteCode.Type.VM);
+    static int internSymbol (String name) {
+	return symbolTable.intern (name);
     }
 
     // Compiles a token to a byte code. 
 
     private ByteCode compileToken (String token) throws VmException {
 	ByteCode bc = new ByteCode ();
-	Integer i = parseInt (token);
-	if (i != null) {
-	    bc.type = ByteCode.Type.INTEGER;
-	    bc.code = i;
-	} else {
-	    VmNumber vmNum = VmNumber.parse (token);
-	    if (vmNum != null) {
-		bc.code = internNumber (vmNum.getNumber ());
-		bc.type = vmNum.getType ();
+	bc.type = literal.scan (token);
+	switch (bc.type) {
+	case INTEGER:
+	case BOOLEAN:
+	    bc.code = literal.intValue ();
+	    break;
+	case LONG:
+	    bc.value = literal.longValue ();
+	    break;
+	case DOUBLE:
+	    bc.value = Double.doubleToLongBits (literal.doubleValue ());
+	    break;
+	case BIGINTEGER:
+	    bc.code = internNumber (literal.bigValue ());
+	    break;
+	case STRING:
+	    bc.code = internString (token);
+	    break;
+	default:
+	    int id = internSymbol (token);
+	    int opcode = DefaultWords.getOpcode (id);
+	    if (opcode >= 0) {
+		bc.type = ByteCode.Type.OPERATION;
+		bc.code = opcode;
 	    } else {
-		if (isString (token)) {
-		    int hc = internString (token);
-		    bc.type = ByteCode.Type.STRING;
-		    bc.code = hc;
-		} else if (isBoolean (token)) {		    
-		    bc.type = ByteCode.Type.BOOLEAN;
-		    bc.code = (token.charAt (0) == 't' ? 1 : 0);
-		} else {
-		    bc.type = ByteCode.Type.WORD;
-		    bc.code = token.hashCode ();
-		}
+		bc.type = ByteCode.Type.WORD;
+		bc.code = id;
 	    }
 	}
 	return bc;
@@ -1099,25 +1980,10 @@ public final class Vm {
     // Initializes the default vm operations table. 
 
     private void initVmOperations () {
-	vmOperations = DefaultWords.getDefaultOperation ();
+	vmOperations = DefaultWords.getDefaultOperations ();
+	ownOperations = false;
     }
 
-    // Creates a process specific VM stack. 
-
-    private void makeRootVmStack () {
-	vmStack = new Stack<Vm> ();
-	vmStack.push (this);
-    }
-
-    // Prepares the virtual machine to run on a new process. 
-    // Both data stack and vm stack are create new. 
-
-    private void prepareForSpawning (Vm parent) {
-        dataStack = createFrom (parent.dataStack);
-	makeRootVmStack ();
-	spawned = true;
-    }	
-
     // Changes i to, so that it will act as an index into
     // dataStack, starting at the top.
 
@@ -1125,54 +1991,83 @@ public final class Vm {
 	return dataStack.size () - (i + 1);
     }
 
+    // Returns the data stack currently in use.  Used by the 
+    // List view of the stack. 
+
+    DataStack currentStack () {
+	return dataStack;
+    }
+
     // Creates a new data stack with elements in `stack'. 
 
-    private static Stack<DataStackElement> createFrom (Stack<DataStackElement> stack) {
-        Stack<DataStackElement> s = new Stack<DataStackElement> ();
-        int sz = stack.size ();
-        for (int i = 0; i < sz; ++i) {
-            s.push (stack.elementAt (i));
-        }
-        return s;
+    private static DataStack createFrom (DataStack stack) {
+        return stack.copy ();
     }
 
     private Niue niue = null;
     private boolean stopped = false;
     private boolean compilationMode = false;
     private ByteCodes byteCodes = null;
-    private Stack<DataStackElement> dataStack = null;
-    private Stack<DataStackElement> oldDataStack = null;
+    private DataStack dataStack = null;
+    private DataStack oldDataStack = null;
+    private DataStack inbox = null;
+    // For a spawned process, the parent's data stack as it was when 
+    // the process was spawned.  
+    private DataStack parentStack = null;
+    // Guards `inbox'.  An explicit lock, so that a process running on a
+    // virtual thread parks instead of pinning its carrier thread. 
+    private final ReentrantLock inboxLock = new ReentrantLock ();
+    private final Condition inboxChanged = inboxLock.newCondition ();
+    // Elements the inbox holds before senders wait, or 0 for no limit.
+    private int mailboxCapacity = MAILBOX_CAPACITY;
+    // True once the process has exited.  See closeMailbox (). 
+    private boolean mailboxClosed = false;
+    // True while the process waits for a message without a thread, and
+    // the callback that requeues it.  See receiveOrSuspend (). 
+    private boolean parked = false;
+    private volatile Runnable wakeup = null;
+    private final DataStackList dataStackView = new DataStackList (this);
     private boolean spawned = false;
-    private boolean hasNewStack = false;
+    // True once a spawned process has run its first slice. 
+    private boolean started = false;
     private PrintStream out = null;
-    private Hashtable<Integer, IVmOperation> vmOperations = null;
+    private IVmOperation[] vmOperations = null;
+    private boolean ownOperations = false;
     private Vm parentVm = null;
-    private Hashtable<Integer, DataStackElement> vars = 
-	new Hashtable<Integer, DataStackElement> ();
+    private VarSlot[] vars = null;
+    // True if `vars' is shared with another virtual machine. 
+    private boolean sharedVars = false;
     private ProcessController procController = null;
     private int procId = 0;
-    private int virtualMachineId = 0;
-    private Stack<Vm> vmStack = null;
+    // Code blocks being compiled, innermost on top. 
+    private final Stack<CodeBlock> blockStack = new Stack<CodeBlock> ();
     private String currentToken = null;
-    private ArrayList<Integer> childVmIds = new ArrayList<Integer> ();
-    private int objectId = 0;
+    private final Literal literal = new Literal ();
+    private ModuleCache.Recording recording = null;
+    private final ByteCodeExecutor executor = new ByteCodeExecutor ();
+    // Nesting of executeFor () and run () calls.  See enter (). 
+    private int active = 0;
+    // Null for a spawned process that has no definitions of its own. 
+    private volatile DictionaryVersion version = null;
+    // Indexed by opcode.  Null if no default word is redefined. 
+    private volatile boolean[] shadowed = null;
 
     // Global tables.
-    private static Hashtable<Integer, Vm> vmTable = 
-	new Hashtable<Integer, Vm> ();
-    private static int childVmCount = 0;
-    private static Hashtable<Integer, String> stringTable = 
-	new Hashtable<Integer, String> ();
-    private static Hashtable<Integer, Number> numberTable = 
-	new Hashtable<Integer, Number> (); 
-    private static Hashtable<Integer, Object> objectTable =
-        new Hashtable<Integer, Object> ();
+    // Words, variable names and strings share the symbol table. 
+    // A string pushed to the stack can thus be executed as a word. 
+    static final InternTable<String> symbolTable = 
+	new InternTable<String> ();
+    static final InternTable<Number> numberTable = 
+	new InternTable<Number> (); 
+    static final InternTable<Object> objectTable =
+        new InternTable<Object> ();
 
     public static final String EMPTY_STACK_MSG = "<empty-stack>";
-    static final int COLON_DEF = ":".hashCode ();
-    static final int COLON_DEF_END = ";".hashCode ();
-    static final int BLOCK_START = "[".hashCode ();
-    static final int BLOCK_END = "]".hashCode ();
-    static final int BLOCK_START_NEW_STACK = "{".hashCode ();
-    static final int BLOCK_END_NEW_STACK = "}".hashCode ();
+    private static final int INBOX_CAPACITY = 8;
+    private static final int MAILBOX_CAPACITY = 
+	Math.max (Integer.getInteger ("niue.mailbox", 0).intValue (), 0);
+    static final char BLOCK_START = '[';
+    static final char BLOCK_END = ']';
+    static final char BLOCK_START_NEW_STACK = '{';
+    static final char BLOCK_END_NEW_STACK = '}';
 }
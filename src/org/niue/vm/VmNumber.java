@@ -25,11 +25,10 @@
 
 package org.niue.vm;
 
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.math.BigInteger;
-
 // Represnts very lart integers and double values.
+// Integers that fit in 64 bits are LONGs, unless they are written 
+// with the `L' prefix.  Larger integers are BIGINTEGERs.  LONGs and
+// DOUBLEs are not interned, they are stored in the data stack slot. 
 
 public class VmNumber {
     public VmNumber (Number n, ByteCode.Type t) {
@@ -41,25 +40,24 @@ public class VmNumber {
     public ByteCode.Type getType () { return type; }
 
     // Parses the string representation of a number and assigns
-    // an appropriate type to it (either BIGINTEGER or DOUBLE). 
+    // an appropriate type to it (LONG, BIGINTEGER or DOUBLE).  Returns
+    // null if the token is not a number.  See Literal for the syntax. 
+    // Each thread reuses its own scanner. 
 
     public static VmNumber parse (String token) {
-	if (hasLargeNumberPrefix (token)) 
-	    token = token.substring (1);
-	NumberFormat nf = NumberFormat.getInstance ();
-	try {
-	    Number n = null;
-	    ByteCode.Type type = ByteCode.Type.BIGINTEGER;
-	    if (token.indexOf ('.') >= 0) {
-		n = nf.parse (token);
-		type = ByteCode.Type.DOUBLE;
-	    } else {
-		n = new BigInteger (token);
-	    }
-	    return new VmNumber (n, type);
-	} catch (ParseException ex) {
-	    return null;
-	} catch (NumberFormatException ex) {
+	Literal literal = LITERAL.get ();
+	switch (literal.scan (token)) {
+	case INTEGER:
+	case LONG:
+	    return new VmNumber (Long.valueOf (literal.longValue ()), 
+				 ByteCode.Type.LONG);
+	case DOUBLE:
+	    return new VmNumber (Double.valueOf (literal.doubleValue ()), 
+				 ByteCode.Type.DOUBLE);
+	case BIGINTEGER:
+	    return new VmNumber (literal.bigValue (), 
+				 ByteCode.Type.BIGINTEGER);
+	default:
 	    return null;
 	}
     }
@@ -70,4 +68,11 @@ public class VmNumber {
     
     private Number number;
     private ByteCode.Type type;
+
+    private static final ThreadLocal<Literal> LITERAL = 
+	new ThreadLocal<Literal> () {
+	    protected Literal initialValue () {
+		return new Literal ();
+	    }
+	};
 }
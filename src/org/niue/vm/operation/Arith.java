@@ -39,8 +39,19 @@ public final class Arith implements IVmOperation {
     public Arith (Operator opr) {
 	operator = opr;
     }
+
+    public Operator getOperator () {
+	return operator;
+    }
     
     public void execute (Vm vm) throws VmException {
+	if (vm.typeAt (0) == ByteCode.Type.INTEGER
+	    && vm.typeAt (1) == ByteCode.Type.INTEGER) {
+	    int i2 = vm.popInteger ();
+	    int i1 = vm.popInteger ();
+	    executeInts (i1, i2, vm);
+	    return;
+	}
 	DataStackElement elem2 = vm.pop ();
 	DataStackElement elem1 = vm.pop ();
 	try {
@@ -69,6 +80,37 @@ public final class Arith implements IVmOperation {
 	}
     }
 
+    // Fast path for the most common case of both operands being
+    // integers.  The operands are taken directly from the stack
+    // slots, without creating DataStackElements.  The result is 
+    // computed in 64 bits, which cannot overflow for two ints, and 
+    // pushLong () keeps it an INTEGER if it still fits. 
+
+    void executeInts (int i1, int i2, Vm vm) {
+	long l1 = i1;
+	switch (operator) {
+	case ADD:
+	    vm.pushLong (l1 + i2);
+	    break;
+	case SUB:
+	    vm.pushLong (l1 - i2);
+	    break;
+	case MULT:
+	    vm.pushLong (l1 * i2);
+	    break;
+	case DIV:
+	    vm.pushLong (l1 / i2);
+	    break;
+	case MOD:
+	    vm.pushInteger (i1 % i2);
+	    break;
+	case DIV_MOD:
+	    vm.pushInteger (i1 % i2);
+	    vm.pushLong (l1 / i2);
+	    break;
+	}
+    }
+
     private void add (DataStackElement elem1, DataStackElement elem2,
 		      Vm vm) throws VmException {
 	ByteCode.Type type1 = elem1.getType ();
@@ -79,12 +121,14 @@ public final class Arith implements IVmOperation {
 	    if (type1 == ByteCode.Type.INTEGER 
 		&& type2 == ByteCode.Type.INTEGER) {
 		addInts (elem1, elem2, vm);
-	    } else if (type1 == ByteCode.Type.BIGINTEGER
-		       || type2 == ByteCode.Type.BIGINTEGER) {
-		addBigInts (elem1, elem2, vm);
 	    } else if (type1 == ByteCode.Type.DOUBLE
 		       || type2 == ByteCode.Type.DOUBLE) {
 		addDoubles (elem1, elem2, vm);
+	    } else if (type1 == ByteCode.Type.BIGINTEGER
+		       || type2 == ByteCode.Type.BIGINTEGER) {
+		addBigInts (elem1, elem2, vm);
+	    } else if (isLong (type1) && isLong (type2)) {
+		addLongs (elem1, elem2, vm);
 	    } else {
 		VmException.raiseUnexpectedValueOnStack();
 	    }
@@ -100,22 +144,21 @@ public final class Arith implements IVmOperation {
 
     private void addInts (DataStackElement elem1, DataStackElement elem2,
 			  Vm vm) {
-	vm.pushInteger (elem1.getElement () + elem2.getElement ());
+	vm.pushLong ((long) elem1.getElement () + elem2.getElement ());
     }
 
     private void addBigInts (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	BigInteger bi1 = new BigInteger (vm.getDataStackElementValue (elem1));
-	BigInteger bi2 = new BigInteger (vm.getDataStackElementValue (elem2));
+	BigInteger bi1 = vm.toBigInteger (elem1);
+	BigInteger bi2 = vm.toBigInteger (elem2);
 	vm.pushBigInteger (bi1.add (bi2));
     }
     
     private void addDoubles (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	Double d1 = new Double (vm.getDataStackElementValue (elem1));
-	Double d2 = new Double (vm.getDataStackElementValue (elem2));
-	Double d3 = new Double (d1.doubleValue () + d2.doubleValue ());
-	vm.pushDouble (d3);
+	double d1 = toDouble (elem1, vm);
+	double d2 = toDouble (elem2, vm);
+	vm.pushDouble (d1 + d2);
     }
 
     private void sub (DataStackElement elem1, DataStackElement elem2,
@@ -125,12 +168,14 @@ public final class Arith implements IVmOperation {
 	if (type1 == ByteCode.Type.INTEGER 
 	    && type2 == ByteCode.Type.INTEGER) {
 	    subInts (elem1, elem2, vm);
-	} else if (type1 == ByteCode.Type.BIGINTEGER
-		   || type2 == ByteCode.Type.BIGINTEGER) {
-	    subBigInts (elem1, elem2, vm);
 	} else if (type1 == ByteCode.Type.DOUBLE
 		   || type2 == ByteCode.Type.DOUBLE) {
 	    subDoubles (elem1, elem2, vm);
+	} else if (type1 == ByteCode.Type.BIGINTEGER
+		   || type2 == ByteCode.Type.BIGINTEGER) {
+	    subBigInts (elem1, elem2, vm);
+	} else if (isLong (type1) && isLong (type2)) {
+	    subLongs (elem1, elem2, vm);
 	} else {
 	    VmException.raiseUnexpectedValueOnStack();
 	}	
@@ -138,22 +183,21 @@ public final class Arith implements IVmOperation {
 
     private void subInts (DataStackElement elem1, DataStackElement elem2,
 			  Vm vm) {
-	vm.pushInteger (elem1.getElement () - elem2.getElement ());
+	vm.pushLong ((long) elem1.getElement () - elem2.getElement ());
     }
 
     private void subBigInts (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	BigInteger bi1 = new BigInteger (vm.getDataStackElementValue (elem1));
-	BigInteger bi2 = new BigInteger (vm.getDataStackElementValue (elem2));
+	BigInteger bi1 = vm.toBigInteger (elem1);
+	BigInteger bi2 = vm.toBigInteger (elem2);
 	vm.pushBigInteger (bi1.subtract (bi2));
     }
     
     private void subDoubles (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	Double d1 = new Double (vm.getDataStackElementValue (elem1));
-	Double d2 = new Double (vm.getDataStackElementValue (elem2));
-	Double d3 = new Double (d1.doubleValue () - d2.doubleValue ());
-	vm.pushDouble (d3);
+	double d1 = toDouble (elem1, vm);
+	double d2 = toDouble (elem2, vm);
+	vm.pushDouble (d1 - d2);
     }
 
     private void mult (DataStackElement elem1, DataStackElement elem2,
@@ -163,12 +207,14 @@ public final class Arith implements IVmOperation {
 	if (type1 == ByteCode.Type.INTEGER 
 	    && type2 == ByteCode.Type.INTEGER) {
 	    multInts (elem1, elem2, vm);
-	} else if (type1 == ByteCode.Type.BIGINTEGER
-		   || type2 == ByteCode.Type.BIGINTEGER) {
-	    multBigInts (elem1, elem2, vm);
 	} else if (type1 == ByteCode.Type.DOUBLE
 		   || type2 == ByteCode.Type.DOUBLE) {
 	    multDoubles (elem1, elem2, vm);
+	} else if (type1 == ByteCode.Type.BIGINTEGER
+		   || type2 == ByteCode.Type.BIGINTEGER) {
+	    multBigInts (elem1, elem2, vm);
+	} else if (isLong (type1) && isLong (type2)) {
+	    multLongs (elem1, elem2, vm);
 	} else {
 	    VmException.raiseUnexpectedValueOnStack();
 	}	
@@ -176,22 +222,21 @@ public final class Arith implements IVmOperation {
 
     private void multInts (DataStackElement elem1, DataStackElement elem2,
 			  Vm vm) {
-	vm.pushInteger (elem1.getElement () * elem2.getElement ());
+	vm.pushLong ((long) elem1.getElement () * elem2.getElement ());
     }
 
     private void multBigInts (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	BigInteger bi1 = new BigInteger (vm.getDataStackElementValue (elem1));
-	BigInteger bi2 = new BigInteger (vm.getDataStackElementValue (elem2));
+	BigInteger bi1 = vm.toBigInteger (elem1);
+	BigInteger bi2 = vm.toBigInteger (elem2);
 	vm.pushBigInteger (bi1.multiply (bi2));
     }
     
     private void multDoubles (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	Double d1 = new Double (vm.getDataStackElementValue (elem1));
-	Double d2 = new Double (vm.getDataStackElementValue (elem2));
-	Double d3 = new Double (d1.doubleValue () * d2.doubleValue ());
-	vm.pushDouble (d3);
+	double d1 = toDouble (elem1, vm);
+	double d2 = toDouble (elem2, vm);
+	vm.pushDouble (d1 * d2);
     }
 
     private void div (DataStackElement elem1, DataStackElement elem2,
@@ -201,12 +246,14 @@ public final class Arith implements IVmOperation {
 	if (type1 == ByteCode.Type.INTEGER 
 	    && type2 == ByteCode.Type.INTEGER) {
 	    divInts (elem1, elem2, vm);
-	} else if (type1 == ByteCode.Type.BIGINTEGER
-		   || type2 == ByteCode.Type.BIGINTEGER) {
-	    divBigInts (elem1, elem2, vm);
 	} else if (type1 == ByteCode.Type.DOUBLE
 		   || type2 == ByteCode.Type.DOUBLE) {
 	    divDoubles (elem1, elem2, vm);
+	} else if (type1 == ByteCode.Type.BIGINTEGER
+		   || type2 == ByteCode.Type.BIGINTEGER) {
+	    divBigInts (elem1, elem2, vm);
+	} else if (isLong (type1) && isLong (type2)) {
+	    divLongs (elem1, elem2, vm);
 	} else {
 	    VmException.raiseUnexpectedValueOnStack();
 	}	
@@ -214,22 +261,21 @@ public final class Arith implements IVmOperation {
 
     private void divInts (DataStackElement elem1, DataStackElement elem2,
 			  Vm vm) {
-	vm.pushInteger (elem1.getElement () / elem2.getElement ());
+	vm.pushLong ((long) elem1.getElement () / elem2.getElement ());
     }
 
     private void divBigInts (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	BigInteger bi1 = new BigInteger (vm.getDataStackElementValue (elem1));
-	BigInteger bi2 = new BigInteger (vm.getDataStackElementValue (elem2));
+	BigInteger bi1 = vm.toBigInteger (elem1);
+	BigInteger bi2 = vm.toBigInteger (elem2);
 	vm.pushBigInteger (bi1.divide (bi2));
     }
     
     private void divDoubles (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	Double d1 = new Double (vm.getDataStackElementValue (elem1));
-	Double d2 = new Double (vm.getDataStackElementValue (elem2));
-	Double d3 = new Double (d1.doubleValue () / d2.doubleValue ());
-	vm.pushDouble (d3);
+	double d1 = toDouble (elem1, vm);
+	double d2 = toDouble (elem2, vm);
+	vm.pushDouble (d1 / d2);
     }
 
     private void mod (DataStackElement elem1, DataStackElement elem2,
@@ -239,12 +285,14 @@ public final class Arith implements IVmOperation {
 	if (type1 == ByteCode.Type.INTEGER 
 	    && type2 == ByteCode.Type.INTEGER) {
 	    modInts (elem1, elem2, vm);
-	} else if (type1 == ByteCode.Type.BIGINTEGER
-		   || type2 == ByteCode.Type.BIGINTEGER) {
-	    modBigInts (elem1, elem2, vm);
 	} else if (type1 == ByteCode.Type.DOUBLE
 		   || type2 == ByteCode.Type.DOUBLE) {
 	    modDoubles (elem1, elem2, vm);
+	} else if (type1 == ByteCode.Type.BIGINTEGER
+		   || type2 == ByteCode.Type.BIGINTEGER) {
+	    modBigInts (elem1, elem2, vm);
+	} else if (isLong (type1) && isLong (type2)) {
+	    modLongs (elem1, elem2, vm);
 	} else {
 	    VmException.raiseUnexpectedValueOnStack();
 	}	
@@ -257,17 +305,16 @@ public final class Arith implements IVmOperation {
 
     private void modBigInts (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	BigInteger bi1 = new BigInteger (vm.getDataStackElementValue (elem1));
-	BigInteger bi2 = new BigInteger (vm.getDataStackElementValue (elem2));
+	BigInteger bi1 = vm.toBigInteger (elem1);
+	BigInteger bi2 = vm.toBigInteger (elem2);
 	vm.pushBigInteger (bi1.mod (bi2));
     }
     
     private void modDoubles (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	Double d1 = new Double (vm.getDataStackElementValue (elem1));
-	Double d2 = new Double (vm.getDataStackElementValue (elem2));
-	Double d3 = new Double (d1.doubleValue () % d2.doubleValue ());
-	vm.pushDouble (d3);
+	double d1 = toDouble (elem1, vm);
+	double d2 = toDouble (elem2, vm);
+	vm.pushDouble (d1 % d2);
     }
 
     private void divMod (DataStackElement elem1, DataStackElement elem2,
@@ -277,12 +324,14 @@ public final class Arith implements IVmOperation {
 	if (type1 == ByteCode.Type.INTEGER 
 	    && type2 == ByteCode.Type.INTEGER) {
 	    divModInts (elem1, elem2, vm);
-	} else if (type1 == ByteCode.Type.BIGINTEGER
-		   || type2 == ByteCode.Type.BIGINTEGER) {
-	    divModBigInts (elem1, elem2, vm);
 	} else if (type1 == ByteCode.Type.DOUBLE
 		   || type2 == ByteCode.Type.DOUBLE) {
 	    divModDoubles (elem1, elem2, vm);
+	} else if (type1 == ByteCode.Type.BIGINTEGER
+		   || type2 == ByteCode.Type.BIGINTEGER) {
+	    divModBigInts (elem1, elem2, vm);
+	} else if (isLong (type1) && isLong (type2)) {
+	    divModLongs (elem1, elem2, vm);
 	} else {
 	    VmException.raiseUnexpectedValueOnStack();
 	}	
@@ -292,16 +341,14 @@ public final class Arith implements IVmOperation {
 			  Vm vm) {
 	int e1 = elem1.getElement ();
 	int e2 = elem2.getElement ();
-	int q = e1 / e2;
-	int r = e1 % e2;
-	vm.pushInteger (r);
-	vm.pushInteger (q);
+	vm.pushInteger (e1 % e2);
+	vm.pushLong ((long) e1 / e2);
     }
 
     private void divModBigInts (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	BigInteger bi1 = new BigInteger (vm.getDataStackElementValue (elem1));
-	BigInteger bi2 = new BigInteger (vm.getDataStackElementValue (elem2));
+	BigInteger bi1 = vm.toBigInteger (elem1);
+	BigInteger bi2 = vm.toBigInteger (elem2);
 	BigInteger q = bi1.divide (bi2);
 	BigInteger r = bi1.mod (bi2);
 	vm.pushBigInteger (r);
@@ -310,14 +357,123 @@ public final class Arith implements IVmOperation {
     
     private void divModDoubles (DataStackElement elem1, DataStackElement elem2,
 			     Vm vm) throws VmException {
-	Double d1 = new Double (vm.getDataStackElementValue (elem1));
-	Double d2 = new Double (vm.getDataStackElementValue (elem2));
-	double dv1 = d1.doubleValue ();
-	double dv2 = d2.doubleValue ();
-	Double q = new Double (dv1 / dv2);
-	Double r = new Double (dv1 % dv2);
-	vm.pushDouble (r);
-	vm.pushDouble (q);
+	double d1 = toDouble (elem1, vm);
+	double d2 = toDouble (elem2, vm);
+	vm.pushDouble (d1 % d2);
+	vm.pushDouble (d1 / d2);
+    }
+
+    // The LONG operations check for overflow and promote the result 
+    // to a BIGINTEGER when it does not fit in 64 bits. 
+
+    private void addLongs (DataStackElement elem1, DataStackElement elem2,
+			   Vm vm) {
+	long l1 = elem1.getLong ();
+	long l2 = elem2.getLong ();
+	long r = l1 + l2;
+	if (((l1 ^ r) & (l2 ^ r)) < 0) {
+	    vm.pushBigInteger (BigInteger.valueOf (l1).add 
+			       (BigInteger.valueOf (l2)));
+	} else {
+	    vm.pushLong (r);
+	}
+    }
+
+    private void subLongs (DataStackElement elem1, DataStackElement elem2,
+			   Vm vm) {
+	long l1 = elem1.getLong ();
+	long l2 = elem2.getLong ();
+	long r = l1 - l2;
+	if (((l1 ^ l2) & (l1 ^ r)) < 0) {
+	    vm.pushBigInteger (BigInteger.valueOf (l1).subtract 
+			       (BigInteger.valueOf (l2)));
+	} else {
+	    vm.pushLong (r);
+	}
+    }
+
+    private void multLongs (DataStackElement elem1, DataStackElement elem2,
+			    Vm vm) {
+	long l1 = elem1.getLong ();
+	long l2 = elem2.getLong ();
+	if (multOverflows (l1, l2)) {
+	    vm.pushBigInteger (BigInteger.valueOf (l1).multiply 
+			       (BigInteger.valueOf (l2)));
+	} else {
+	    vm.pushLong (l1 * l2);
+	}
+    }
+
+    private void divLongs (DataStackElement elem1, DataStackElement elem2,
+			   Vm vm) {
+	long l1 = elem1.getLong ();
+	long l2 = elem2.getLong ();
+	if (l1 == Long.MIN_VALUE && l2 == -1) {
+	    vm.pushBigInteger (BigInteger.valueOf (l1).negate ());
+	} else {
+	    vm.pushLong (l1 / l2);
+	}
+    }
+
+    private void modLongs (DataStackElement elem1, DataStackElement elem2,
+			   Vm vm) {
+	vm.pushLong (elem1.getLong () % elem2.getLong ());
+    }
+
+    private void divModLongs (DataStackElement elem1, DataStackElement elem2,
+			      Vm vm) {
+	long l1 = elem1.getLong ();
+	long l2 = elem2.getLong ();
+	vm.pushLong (l1 % l2);
+	if (l1 == Long.MIN_VALUE && l2 == -1) {
+	    vm.pushBigInteger (BigInteger.valueOf (l1).negate ());
+	} else {
+	    vm.pushLong (l1 / l2);
+	}
+    }
+
+    // Returns true if the product of l1 and l2 does not fit in a
+    // long.  Operands that both fit in 31 bits never overflow, so
+    // the division is only done for larger ones. 
+
+    private static boolean multOverflows (long l1, long l2) {
+	long a1 = Math.abs (l1);
+	long a2 = Math.abs (l2);
+	if (((a1 | a2) >>> 31) == 0) {
+	    return false;
+	}
+	if (l2 == 0) {
+	    return false;
+	}
+	if (l1 == Long.MIN_VALUE && l2 == -1) {
+	    return true;
+	}
+	return (l1 * l2) / l2 != l1;
+    }
+
+    // INTEGER and LONG elements both keep their value in the 64-bit 
+    // slot, so they mix without conversion. 
+
+    private static boolean isLong (ByteCode.Type type) {
+	return type == ByteCode.Type.INTEGER || type == ByteCode.Type.LONG;
+    }
+
+    // Widens a numeric element to a primitive double.  Only a 
+    // BIGINTEGER has to be fetched from the intern table. 
+
+    private static double toDouble (DataStackElement elem, Vm vm) 
+	throws VmException {
+	switch (elem.getType ()) {
+	case DOUBLE:
+	    return elem.getDouble ();
+	case INTEGER:
+	case LONG:
+	    return elem.getLong ();
+	case BIGINTEGER:
+	    return vm.toBigInteger (elem).doubleValue ();
+	}
+	VmException.raiseUnexpectedValueOnStack ();
+	return 0;
     }
 
     private Operator operator = Operator.ADD;
@@ -30,34 +30,301 @@ import org.niue.vm.Vm;
 import org.niue.vm.VmException;
 import org.niue.vm.ByteCodes;
 import org.niue.vm.ByteCode;
+import org.niue.vm.DataStack;
 
-// Executes the ByteCodes in a list within the context
-// of a given virtual machine. 
+// The interpreter loop of a virtual machine.  Running a code block
+// does not recurse on the Java stack.  Instead, a frame made of the
+// block's byte codes and an instruction pointer is pushed to an 
+// explicit return stack and a single loop executes the byte codes of
+// the frame on top.  An operation that runs a block calls Vm.call (),
+// which pushes a frame and returns at once.  Work that the operation
+// has to do after the block is done is passed as a continuation,
+// which is executed when the frame is popped.  A call made as the last
+// action of a frame replaces that frame, so that tail calls run in 
+// constant space.  Each virtual machine has its own executor. 
 
-public final class ByteCodeExecutor implements IVmOperation {
-    
-    public ByteCodeExecutor (ByteCodes bc) {
-	byteCodes = bc;
+// A spawned process is run in slices, see slice ().  Since all of its
+// state is on the return stack, the outermost loop can stop between
+// two byte codes and pick up from there later, on any thread.  For 
+// the same reason, an operation run by that loop that has to wait can
+// suspend the process instead of blocking the thread, see suspend (). 
+
+public final class ByteCodeExecutor {
+
+    // Runs the byte codes `bc' to completion.  If `hasNewStack' is 
+    // true, they are run on a new data stack. 
+
+    public void run (Vm vm, ByteCodes bc, boolean hasNewStack) 
+	throws VmException {
+	run (vm, bc, hasNewStack, 0);
     }
-    
-    public void execute (Vm vm) throws VmException {
-	ByteCode bc = null;
+
+    // Runs the byte codes `bc' to completion, starting at the index
+    // `ip'. 
+
+    public void run (Vm vm, ByteCodes bc, boolean hasNewStack, int ip) 
+	throws VmException {
+	int oldBase = base;
+	base = depth;
+	++runs;
 	try {
-	    int i = 0;
-	    while ((bc = byteCodes.at (i)) != null) {
-		vm.executeByteCode (bc);
-                ++i;
-	    }
-	} catch (VmException ex) {
-	    throw ex;
+	    push (vm, bc, hasNewStack, null, ip);
+	    loop (vm);
+	} finally {
+	    unwind (vm);
+	    base = oldBase;
+	    --runs;
+	}
+    }
+
+    // Executes a single byte code, along with any block it calls, 
+    // to completion. 
+
+    public void execute (Vm vm, ByteCode bc) throws VmException {
+	int oldBase = base;
+	base = depth;
+	++runs;
+	try {
+	    vm.dispatch (bc);
+	    loop (vm);
+	} finally {
+	    unwind (vm);
+	    base = oldBase;
+	    --runs;
+	}
+    }
+
+    // Executes an operation, along with any block it calls, to 
+    // completion. 
+
+    public void execute (Vm vm, IVmOperation opr) throws VmException {
+	int oldBase = base;
+	base = depth;
+	++runs;
+	try {
+	    opr.execute (vm);
+	    loop (vm);
 	} finally {
-	    byteCodes.resetIndex ();
+	    unwind (vm);
+	    base = oldBase;
+	    --runs;
+	}
+    }
+
+    // Starts the byte codes `bc' as a process that is run in slices.
+    // Nothing is executed until slice () is called. 
+
+    public void start (Vm vm, ByteCodes bc) throws VmException {
+	push (vm, bc, false, null, 0);
+    }
+
+    // Runs the process started by start () for at most `reductions' 
+    // byte codes of its outermost loop.  Returns true if the process 
+    // is done.  Otherwise it is suspended with its frames left on the
+    // return stack, and the next slice resumes it.  Byte codes run by
+    // an operation on its own, like the body of a compiled block, are
+    // not counted and are not cut short. 
+
+    public boolean slice (Vm vm, int reductions) throws VmException {
+	++runs;
+	budget = reductions;
+	boolean ok = false;
+	try {
+	    loop (vm);
+	    ok = true;
+	} finally {
+	    if (!ok) unwind (vm);
+	    budget = 0;
+	    --runs;
+	}
+	return (depth == base);
+    }
+
+    // Schedules the byte codes `bc' to run as soon as the operation
+    // that is being executed returns.  `then' is executed after the
+    // byte codes are done.  If `bc' is null, only `then' is scheduled. 
+
+    public void call (Vm vm, ByteCodes bc, boolean hasNewStack,
+		      IVmOperation then) throws VmException {
+	call (vm, bc, hasNewStack, then, 0);
+    }
+
+    // Schedules the byte codes `bc' to run from the index `ip'. 
+
+    public void call (Vm vm, ByteCodes bc, boolean hasNewStack,
+		      IVmOperation then, int ip) throws VmException {
+	if (bc == null && then == null) {
+	    return;
+	}
+	if (depth > base) {
+	    int f = depth - 1;
+	    if (thens[f] == null && callerStacks[f] == null 
+		&& ips[f] >= frameCodes[f].size ()) {
+		pop (f);
+	    }
+	}
+	push (vm, bc, hasNewStack, then, ip);
+    }
+
+    // Returns true if the operation being executed can suspend the 
+    // process with suspend ().  That is the case if the operation is
+    // the byte code that the outermost loop of a slice is dispatching,
+    // and not code run on its behalf. 
+
+    public boolean canSuspend () {
+	int f = depth - 1;
+	return (runs == 1 && budget > 0 && dispatched != null 
+		&& dispatched.type != ByteCode.Type.FUSED
+		&& f >= base && frameCodes[f] != null && ips[f] > 0 
+		&& frameCodes[f].at (ips[f] - 1) == dispatched);
+    }
+
+    // Suspends the process.  The byte code being dispatched is set to
+    // run again when the process resumes, and the slice ends as soon
+    // as it returns.  The operation must leave the data stack as it 
+    // found it, since it will be executed again from the start.  Must
+    // be called only if canSuspend () returned true. 
+
+    public void suspend () {
+	--ips[depth - 1];
+	dispatched = null;
+	suspended = true;
+    }
+
+    // Called before code is run on behalf of the byte code being 
+    // dispatched without going through the loop, like a compiled 
+    // block.  Operations in that code cannot suspend the process. 
+
+    public void inline () {
+	dispatched = null;
+    }
+
+    // Returns the data stacks saved by the frames on the return 
+    // stack, which are restored when the frames are done. 
+
+    public DataStack[] savedStacks () {
+	DataStack[] stacks = new DataStack[depth];
+	System.arraycopy (callerStacks, 0, stacks, 0, depth);
+	return stacks;
+    }
+
+    // Executes the frame on top of the return stack until the 
+    // stack is back to the depth it had when this run started. 
+
+    private void loop (Vm vm) throws VmException {
+	while (depth > base) {
+	    vm.safepoint ();
+	    int f = depth - 1;
+	    ByteCodes bc = frameCodes[f];
+	    if (bc != null && ips[f] < bc.size ()) {
+		ByteCode next = bc.at (ips[f]++);
+		dispatched = next;
+		int skip = vm.dispatch (next);
+		dispatched = null;
+		if (suspended) {
+		    suspended = false;
+		    return;
+		}
+		if (skip > 0) {
+		    ips[f] += skip;
+		}
+	    } else {
+		IVmOperation then = thens[f];
+		DataStack callerStack = callerStacks[f];
+		pop (f);
+		if (callerStack != null) {
+		    vm.restoreDataStack (callerStack);
+		}
+		if (then != null) {
+		    then.execute (vm);
+		}
+	    }
+	    if (budget > 0 && runs == 1 && --budget == 0) {
+		return;
+	    }
 	}
     }
 
-    public void setByteCodes (ByteCodes bc) {
-	byteCodes = bc;
+    // Pushes a new frame to the return stack. 
+
+    private void push (Vm vm, ByteCodes bc, boolean hasNewStack,
+		       IVmOperation then, int ip) throws VmException {
+	if (depth == frameCodes.length) {
+	    grow ();
+	}
+	frameCodes[depth] = bc;
+	ips[depth] = ip;
+	thens[depth] = then;
+	callerStacks[depth] = (bc != null && hasNewStack ? 
+			       vm.newDataStack () : null);
+	++depth;
     }
 
-    ByteCodes byteCodes = null;
+    // Removes the frame at the top of the return stack. 
+
+    private void pop (int f) {
+	frameCodes[f] = null;
+	thens[f] = null;
+	callerStacks[f] = null;
+	depth = f;
+    }
+
+    // Discards the frames left over by a run that was ended by an 
+    // exception.  Data stacks replaced by `{ ... }' blocks are 
+    // restored. 
+
+    private void unwind (Vm vm) {
+	while (depth > base) {
+	    int f = depth - 1;
+	    DataStack callerStack = callerStacks[f];
+	    pop (f);
+	    if (callerStack != null) {
+		vm.restoreDataStack (callerStack);
+	    }
+	}
+    }
+
+    private void grow () throws VmException {
+	if (frameCodes.length >= MAX_DEPTH) {
+	    throw new VmException ("Return stack overflow.");
+	}
+	int capacity = frameCodes.length * 2;
+	ByteCodes[] c = new ByteCodes[capacity];
+	int[] ip = new int[capacity];
+	IVmOperation[] t = new IVmOperation[capacity];
+	DataStack[] s = new DataStack[capacity];
+	System.arraycopy (frameCodes, 0, c, 0, depth);
+	System.arraycopy (ips, 0, ip, 0, depth);
+	System.arraycopy (thens, 0, t, 0, depth);
+	System.arraycopy (callerStacks, 0, s, 0, depth);
+	frameCodes = c;
+	ips = ip;
+	thens = t;
+	callerStacks = s;
+    }
+
+    // The return stack.  Each frame is made of the byte codes being
+    // run, the index of the next byte code to run, the continuation 
+    // to execute when the frame is done and, for `{ ... }' blocks, 
+    // the data stack to return to. 
+    private ByteCodes[] frameCodes = new ByteCodes[INITIAL_DEPTH];
+    private int[] ips = new int[INITIAL_DEPTH];
+    private IVmOperation[] thens = new IVmOperation[INITIAL_DEPTH];
+    private DataStack[] callerStacks = new DataStack[INITIAL_DEPTH];
+    private int depth = 0;
+    // Depth of the return stack when the innermost run started.
+    // Frames below it belong to runs further down the Java stack.
+    private int base = 0;
+    // Number of runs in progress, nested on the Java stack. 
+    private int runs = 0;
+    // Byte codes left in the current slice, or 0 if the run is not
+    // sliced. 
+    private int budget = 0;
+    // The byte code being dispatched by the loop, and whether the 
+    // operation it ran suspended the process.  See suspend (). 
+    private ByteCode dispatched = null;
+    private boolean suspended = false;
+
+    private static final int INITIAL_DEPTH = 32;
+    private static final int MAX_DEPTH = 1 << 22;
 }
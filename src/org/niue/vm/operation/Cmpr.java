@@ -30,7 +30,6 @@ import org.niue.vm.Vm;
 import org.niue.vm.VmException;
 import org.niue.vm.ByteCode;
 import org.niue.vm.DataStackElement;
-import java.math.BigInteger;
 
 // Implements the comparison operators. 
 
@@ -45,8 +44,20 @@ public final class Cmpr implements IVmOperation {
     public void setOperator (Operator opr) {
 	operator = opr;
     }
+
+    public Operator getOperator () {
+	return operator;
+    }
     
     public void execute (Vm vm) throws VmException {
+	if (operator != Operator.EQUALS
+	    && vm.typeAt (0) == ByteCode.Type.INTEGER
+	    && vm.typeAt (1) == ByteCode.Type.INTEGER) {
+	    int i2 = vm.popInteger ();
+	    int i1 = vm.popInteger ();
+	    vm.pushBoolean (compareInts (i1, i2));
+	    return;
+	}
 	DataStackElement elem2 = vm.pop ();
 	DataStackElement elem1 = vm.pop ();
 	execute (vm, elem1, elem2);
@@ -77,6 +88,24 @@ public final class Cmpr implements IVmOperation {
 	}
     }
 
+    // Fast path for comparing two integers taken directly from 
+    // the stack slots. 
+
+    boolean compareInts (int i1, int i2) {
+	switch (operator) {
+	case LT:
+	    return i1 < i2;
+	case GT:
+	    return i1 > i2;
+	case LT_EQ:
+	    return i1 <= i2;
+	case GT_EQ:
+	    return i1 >= i2;
+	default:
+	    return i1 == i2;
+	}
+    }
+
     // The coarsest definition of equality.  Puts true on the stack if
     // the string representations of elem1 and elem2 are the same.  This
     // means, both [ 1 1 = ] and [ 1 "1" = ] will return true.  
@@ -92,9 +121,24 @@ public final class Cmpr implements IVmOperation {
 	return b;
     }
 
+    // Identity comparison.  Interned values are identical if their ids
+    // are, but longs and doubles live in the stack slot, so they are
+    // compared by value. 
+
     private void eq (DataStackElement elem1, DataStackElement elem2,
 		     Vm vm) throws VmException {
-	vm.pushBoolean (elem1.getElement () == elem2.getElement ());
+	ByteCode.Type type1 = elem1.getType ();
+	ByteCode.Type type2 = elem2.getType ();
+	if (isInline (type1) || isInline (type2)) {
+	    if (isNumber (type1) && isNumber (type2)) {
+		vm.pushBoolean (compareNumbers (elem1, elem2, vm) == 0);
+	    } else {
+		vm.pushBoolean (false);
+	    }
+	    return;
+	}
+	vm.pushBoolean (elem1.getElement () == elem2.getElement ()
+			&& elem1.getBlock () == elem2.getBlock ());
     }    
 
     private void lt (DataStackElement elem1, DataStackElement elem2,
@@ -133,13 +177,8 @@ public final class Cmpr implements IVmOperation {
 		|| type2 == ByteCode.Type.STRING) {
 		if (applyOprString (opr, elem1, elem2, vm))
 		    return;
-	    } else if (type1 == ByteCode.Type.BIGINTEGER
-		       || type2 == ByteCode.Type.BIGINTEGER) {
-		if (applyOprBigInt (opr, elem1, elem2, vm))
-		    return;
-	    } else if (type1 == ByteCode.Type.DOUBLE
-		       || type2 == ByteCode.Type.DOUBLE) {
-		if (applyOprDouble (opr, elem1, elem2, vm))
+	    } else if (isNumber (type1) && isNumber (type2)) {
+		if (applyOprNumber (opr, elem1, elem2, vm))
 		    return;
 	    }
 	}
@@ -192,54 +231,74 @@ public final class Cmpr implements IVmOperation {
 	return true;
     }
 
-    private boolean applyOprBigInt (Operator opr, DataStackElement elem1,
+    private boolean applyOprNumber (Operator opr, DataStackElement elem1,
 				    DataStackElement elem2, Vm vm)
 	throws VmException {
-	BigInteger s1 = new BigInteger (vm.getDataStackElementValue 
-					(elem1));
-	BigInteger s2 = new BigInteger (vm.getDataStackElementValue 
-					(elem2));
+	int c = compareNumbers (elem1, elem2, vm);
 	switch (opr) {
 	case LT:
-	    vm.pushBoolean ((s1.compareTo (s2)) < 0);
+	    vm.pushBoolean (c < 0);
 	    break;
 	case GT:
-	    vm.pushBoolean ((s1.compareTo (s2)) > 0);
+	    vm.pushBoolean (c > 0);
 	    break;
 	case LT_EQ:
-	    vm.pushBoolean ((s1.compareTo (s2)) <= 0);
+	    vm.pushBoolean (c <= 0);
 	    break;
 	case GT_EQ:
-	    vm.pushBoolean ((s1.compareTo (s2)) >= 0);
+	    vm.pushBoolean (c >= 0);
 	    break;
 	default:
 	    return false;
 	}
 	return true;
     }	
-    
-    private boolean applyOprDouble (Operator opr, DataStackElement elem1,
-				    DataStackElement elem2, Vm vm)
+
+    // Compares two numbers by promoting both to the wider of the 
+    // two types: INTEGER < LONG < BIGINTEGER < DOUBLE. 
+
+    private static int compareNumbers (DataStackElement elem1, 
+				       DataStackElement elem2, Vm vm) 
 	throws VmException {
-	Double s1 = new Double (vm.getDataStackElementValue (elem1));
-	Double s2 = new Double (vm.getDataStackElementValue (elem2));
-	switch (opr) {
-	case LT:
-	    vm.pushBoolean ((s1.compareTo (s2)) < 0);
-	    break;
-	case GT:
-	    vm.pushBoolean ((s1.compareTo (s2)) > 0);
-	    break;
-	case LT_EQ:
-	    vm.pushBoolean ((s1.compareTo (s2)) <= 0);
-	    break;
-	case GT_EQ:
-	    vm.pushBoolean ((s1.compareTo (s2)) >= 0);
-	    break;
+	ByteCode.Type type1 = elem1.getType ();
+	ByteCode.Type type2 = elem2.getType ();
+	if (type1 == ByteCode.Type.DOUBLE || type2 == ByteCode.Type.DOUBLE) {
+	    return Double.compare (toDouble (elem1, vm), 
+				   toDouble (elem2, vm));
+	}
+	if (type1 == ByteCode.Type.BIGINTEGER 
+	    || type2 == ByteCode.Type.BIGINTEGER) {
+	    return vm.toBigInteger (elem1).compareTo (vm.toBigInteger (elem2));
+	}
+	long l1 = elem1.getLong ();
+	long l2 = elem2.getLong ();
+	return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+    }
+
+    private static double toDouble (DataStackElement elem, Vm vm) 
+	throws VmException {
+	switch (elem.getType ()) {
+	case DOUBLE:
+	    return elem.getDouble ();
+	case BIGINTEGER:
+	    return vm.toBigInteger (elem).doubleValue ();
 	default:
-	    return false;
+	    return elem.getLong ();
 	}
-	return true;
-    }	
+    }
+
+    private static boolean isNumber (ByteCode.Type type) {
+	return type == ByteCode.Type.INTEGER || type == ByteCode.Type.LONG
+	    || type == ByteCode.Type.BIGINTEGER 
+	    || type == ByteCode.Type.DOUBLE;
+    }
+
+    // Types whose value is kept in the stack slot instead of being 
+    // interned. 
+
+    private static boolean isInline (ByteCode.Type type) {
+	return type == ByteCode.Type.LONG || type == ByteCode.Type.DOUBLE;
+    }
+
     private Operator operator;
 }
@@ -48,8 +48,7 @@ public final class DefVar implements IVmOperation {
 	if (name.getType () != ByteCode.Type.STRING) {
 	    throw new VmException ("Name must be a string.");
 	}
-	vm.putVar (vm.getDataStackElementValue (name).hashCode (), 
-		   var, strict);
+	vm.putVar (name.getElement (), var, strict);
     }
 
     private boolean strict = false;
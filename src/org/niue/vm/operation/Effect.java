@@ -0,0 +1,49 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm.operation;
+
+import org.niue.vm.IVmOperation;
+import org.niue.vm.Vm;
+import org.niue.vm.VmException;
+import org.niue.vm.DataStackElement;
+import org.niue.vm.ByteCode;
+import org.niue.vm.StackEffect;
+
+// Replaces the block on top of the stack with a string that describes
+// its inferred stack effect, like `( 1 -- 2 )'.  The string is `( ? )' 
+// if the effect could not be inferred. 
+
+public final class Effect implements IVmOperation {
+
+    public void execute (Vm vm) throws VmException {
+	DataStackElement elem = vm.pop ();
+	if (elem.getType () != ByteCode.Type.BLOCK) {
+	    VmException.raiseUnexpectedValueOnStack ();
+	}
+	StackEffect effect = elem.getBlock ().getStackEffect (vm);
+	vm.pushString (effect == null ? "( ? )" : effect.toString ());
+    }
+}
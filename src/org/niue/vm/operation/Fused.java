@@ -0,0 +1,133 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm.operation;
+
+import org.niue.vm.IVmOperation;
+import org.niue.vm.Vm;
+import org.niue.vm.VmException;
+import org.niue.vm.ByteCode;
+import org.niue.vm.Peephole;
+
+// A superinstruction created by the peephole optimizer for a sequence
+// of words and integer literals.  When the operands are integers on
+// the local stack, the whole sequence is done in one step.  Otherwise 
+// the operations of the sequence are executed one after the other, 
+// so the result is always the same as that of the original code. 
+
+public final class Fused implements IVmOperation {
+
+    // The kinds of sequences that can be fused.  Each kind is also
+    // the Fuser of its rules in the peephole table. 
+
+    public enum Kind implements Peephole.Fuser { 
+	SQUARE, NIP, TWO_DUP, ARITH_CONST, DUP_ARITH_CONST, 
+	CMPR_CONST, DUP_CMPR_CONST;
+
+	public IVmOperation fuse (IVmOperation[] operations, int[] values) {
+	    return new Fused (this, operations, values);
+	}
+    }
+
+    public Fused (Kind kind, IVmOperation[] operations, int[] values) {
+	this.kind = kind;
+	this.operations = operations;
+	this.values = values;
+	IVmOperation last = operations[operations.length - 1];
+	if (last instanceof Arith) {
+	    arith = (Arith) last;
+	} else if (last instanceof Cmpr) {
+	    cmpr = (Cmpr) last;
+	}
+	value = (values.length > 1) ? values[values.length - 2] : 0;
+    }
+
+    public void execute (Vm vm) throws VmException {
+	if (!executeInts (vm)) {
+	    for (int i = 0; i < operations.length; ++i) {
+		if (operations[i] == null) {
+		    vm.pushInteger (values[i]);
+		} else {
+		    operations[i].execute (vm);
+		}
+	    }
+	}
+    }
+
+    // Fast path for integer operands.  Returns false if the operands
+    // are not what the fast path expects. 
+
+    private boolean executeInts (Vm vm) throws VmException {
+	switch (kind) {
+	case NIP:
+	    if (vm.typeAt (1) == null) return false;
+	    vm.remove (1);
+	    return true;
+	case TWO_DUP:
+	    if (vm.typeAt (1) == null) return false;
+	    vm.pick (1);
+	    vm.pick (1);
+	    return true;
+	default:
+	    break;
+	}
+	if (vm.typeAt (0) != ByteCode.Type.INTEGER) {
+	    return false;
+	}
+	switch (kind) {
+	case SQUARE:
+	    {
+		int i = vm.popInteger ();
+		vm.pushLong ((long) i * i);
+		return true;
+	    }
+	case ARITH_CONST:
+	    if (arith == null) return false;
+	    arith.executeInts (vm.popInteger (), value, vm);
+	    return true;
+	case DUP_ARITH_CONST:
+	    if (arith == null) return false;
+	    arith.executeInts (vm.valueAt (0), value, vm);
+	    return true;
+	case CMPR_CONST:
+	    if (cmpr == null) return false;
+	    vm.pushBoolean (cmpr.compareInts (vm.popInteger (), value));
+	    return true;
+	case DUP_CMPR_CONST:
+	    if (cmpr == null) return false;
+	    vm.pushBoolean (cmpr.compareInts (vm.valueAt (0), value));
+	    return true;
+	default:
+	    return false;
+	}
+    }
+
+    private final Kind kind;
+    private final IVmOperation[] operations;
+    private final int[] values;
+    private Arith arith = null;
+    private Cmpr cmpr = null;
+    private final int value;
+}
@@ -28,8 +28,8 @@ package org.niue.vm.operation;
 import org.niue.vm.IVmOperation;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
-import org.niue.vm.DataStackElement;
 import org.niue.vm.ByteCode;
+import org.niue.vm.CodeBlock;
 
 // Implements the conditional branching words - if, when and unless. 
 
@@ -39,6 +39,9 @@ public final class If implements IVmOperation {
 
     public If (Cond cond) {
 	this.cond = cond;
+	if (cond == Cond.IF || cond == Cond.ELIF) {
+	    after = new IVmOperation[] { new After (0), new After (1) };
+	}
     }
     
     // The semantics of when and unless:
@@ -52,70 +55,91 @@ public final class If implements IVmOperation {
     // `block_or_word_to_execute1' is executed if the value left by
     // `condition' is true.  `block_or_word_to_execute2' is executed
     // otherwise. 
+    // The block is run by the interpreter loop after this operation
+    // returns.  The condition is left on the stack for `else' and 
+    // `elif' once the block is done. 
 
     public void execute (Vm vm) throws VmException {
-	DataStackElement c = vm.at (1);
-	if (c.getType () != ByteCode.Type.BOOLEAN) {
+	int c = vm.valueAt (1);
+	if (vm.typeAt (1) != ByteCode.Type.BOOLEAN) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
-	DataStackElement block = vm.at (0);
-	ByteCode.Type type = block.getType ();
-	if (type != ByteCode.Type.VM && type != ByteCode.Type.STRING) {
+	int block = vm.valueAt (0);
+	ByteCode.Type type = vm.typeAt (0);
+	CodeBlock codeBlock = vm.blockAt (0);
+	if (type != ByteCode.Type.BLOCK && type != ByteCode.Type.STRING) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
 	boolean exec = shouldExecute (c, vm);
-	vm.pop ();
-	vm.pop ();	
+	vm.drop ();
+	vm.drop ();	
+	IVmOperation then = (after == null ? null : after[c]);
 	if (exec) {
-	    if (type == ByteCode.Type.VM) {
-		vm.runChildVm (block.getElement (), true);
+	    if (codeBlock != null) {
+		vm.call (codeBlock, then);
 	    } else {
-		vm.executeWord (block.getElement ());
+		vm.callWord (block, then);
 	    }
+	} else if (then != null) {
+	    then.execute (vm);
+	}
+    }
+
+    // Leaves the condition on the stack after the block is done. 
+
+    private final class After implements IVmOperation {
+	After (int c) {
+	    this.c = c;
+	}
+
+	public void execute (Vm vm) throws VmException {
+	    pushIfNeeded (vm, c);
 	}
-	pushIfNeeded (vm, c, exec);
+
+	private final int c;
     }
 
-    private void pushIfNeeded (Vm vm, DataStackElement c,
-			       boolean exec) throws VmException {
+    private void pushIfNeeded (Vm vm, int c) throws VmException {
 	if (cond == Cond.IF) {
-	    vm.push (c);
+	    vm.pushBoolean (c);
 	} else if (cond == Cond.ELIF) {
-	    DataStackElement prevc = vm.at (0);
-	    if (prevc.getType () != ByteCode.Type.BOOLEAN) {
+	    int prevc = vm.valueAt (0);
+	    if (vm.typeAt (0) != ByteCode.Type.BOOLEAN) {
 		VmException.raiseUnexpectedValueOnStack ();
 	    }
-	    if (prevc.getElement () == 0) {
-		vm.pop ();
-		vm.push (c);
+	    if (prevc == 0) {
+		vm.drop ();
+		vm.pushBoolean (c);
 	    }
 	}
     }
 
-    private boolean shouldExecute (DataStackElement c, Vm vm) 
+    private boolean shouldExecute (int c, Vm vm) 
 	throws VmException {
 	boolean exec = false;
 	switch (cond) {
 	case WHEN:
 	case IF:
-	    exec = (c.getElement () == 1);
+	    exec = (c == 1);
 	    break;
 	case ELIF:
 	    {
-		DataStackElement prevc = vm.at (2);
-		if (prevc.getType () != ByteCode.Type.BOOLEAN) {
+		int prevc = vm.valueAt (2);
+		if (vm.typeAt (2) != ByteCode.Type.BOOLEAN) {
 		    VmException.raiseUnexpectedValueOnStack ();
 		}
-		exec = (prevc.getElement () == 0 && c.getElement () == 1);
+		exec = (prevc == 0 && c == 1);
 		break;
 	    }
 	case UNLESS:
 	case ELSE:
-	    exec = (c.getElement () == 0);
+	    exec = (c == 0);
 	    break;
 	}
 	return exec;
     }
 
     private Cond cond;
-}
\ No newline at end of file
+    // Continuations for `if' and `elif', indexed by the condition. 
+    private IVmOperation[] after = null;
+}
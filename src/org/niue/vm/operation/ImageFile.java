@@ -0,0 +1,89 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package org.niue.vm.operation;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import org.niue.vm.IVmOperation;
+import org.niue.vm.Image;
+import org.niue.vm.Vm;
+import org.niue.vm.VmException;
+
+// Saves the variables of the virtual machine to a precompiled image
+// file, or defines the variables saved in one.  See Image. 
+
+public final class ImageFile implements IVmOperation {
+
+    public enum Type { SAVE, LOAD };
+
+    public ImageFile (Type type) {
+	this.type = type;
+    }
+
+    public void execute (Vm vm) throws VmException {
+	String fileName = vm.popString ();
+	try {
+	    switch (type) {
+	    case SAVE:
+		save (fileName, vm);
+		break;
+	    case LOAD:
+		load (fileName, vm);
+		break;
+	    }
+	} catch (IOException ex) {
+	    throw new VmException (ex.getMessage ());
+	}
+    }
+
+    private void save (String fileName, Vm vm) 
+	throws VmException, IOException {
+	BufferedOutputStream out = new BufferedOutputStream 
+	    (new FileOutputStream (fileName));
+	try {
+	    Image.write (vm, out);
+	} finally {
+	    out.close ();
+	}
+    }
+
+    private void load (String fileName, Vm vm) 
+	throws VmException, IOException {
+	BufferedInputStream in = new BufferedInputStream 
+	    (new FileInputStream (fileName));
+	try {
+	    Image.read (vm, in);
+	} finally {
+	    in.close ();
+	}
+    }
+
+    private Type type;
+}
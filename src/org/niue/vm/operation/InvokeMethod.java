@@ -95,12 +95,15 @@ public final class InvokeMethod implements IVmOperation {
             return vm.popBigInteger ();
         case DOUBLE:
             return vm.popDouble ();
+        case LONG:
+            return Long.valueOf (vm.popLong ());
         case STRING:
             return vm.popString ();
         case OBJECT:
             return vm.popObject ();
         case WORD:
-        case VM: 
+        case OPERATION:
+        case BLOCK: 
         case IF:
             throw new VmException ("The value on stack cannot be passed to " +
                                    "a generic Java method.");
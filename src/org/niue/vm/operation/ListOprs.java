@@ -27,13 +27,11 @@ package org.niue.vm.operation;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 import java.util.ArrayList;
 import org.niue.vm.IVmOperation;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
 import org.niue.vm.DataStackElement;
-import org.niue.vm.ByteCode;
 
 // Implements some words that treats the data stack as a 
 // linked list. 
@@ -89,23 +87,21 @@ public final class ListOprs implements IVmOperation {
     }
 
     private void at (Vm vm) throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
-	vm.push (vm.at (vm.popInteger ()));
+	vm.pick (vm.popInteger ());
     }
 
     private void remove_at (Vm vm) throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
 	vm.remove (vm.popInteger ());
     }
 
     private void remove_all (Vm vm) throws VmException {
 	DataStackElement elem = vm.pop ();
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	int len = dataStack.size ();
 	for (int i = 0; i < len; ++i) {
-	    DataStackElement e = dataStack.elementAt (i);
+	    DataStackElement e = dataStack.get (i);
             if (e.equals (elem)) {
-                dataStack.removeElementAt (i);
+                dataStack.remove (i);
                 len = dataStack.size ();
             }
 	}
@@ -113,28 +109,25 @@ public final class ListOprs implements IVmOperation {
 
     private void remove (Vm vm) throws VmException {
 	DataStackElement elem = vm.pop ();
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	dataStack.remove (elem);
     }
 
     private void remove_if (Vm vm) throws VmException {
 	DataStackElement codeBlock = vm.pop ();
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	ArrayList<DataStackElement> itemsToRemove = 
 	    new ArrayList<DataStackElement> ();
 	Run run = new Run ();
 	int len = dataStack.size ();
 	for (int i = 0; i < len; ++i) {
-	    DataStackElement e = dataStack.elementAt (i);
-	    dataStack.push (e);
-	    run.run (vm, codeBlock, false);
+	    DataStackElement e = dataStack.get (i);
+	    dataStack.add (e);
+	    run.run (vm, codeBlock);
 	    if (vm.popBoolean ()) {
 		itemsToRemove.add (e);
 	    }
 	}
-	if (codeBlock.getType () == ByteCode.Type.VM) {
-	    vm.discardChildVm (codeBlock.getElement ());
-	}
 	len = itemsToRemove.size ();
 	for (int i = 0; i < len; ++i) {
 	    dataStack.remove (itemsToRemove.get (i));
@@ -142,13 +135,13 @@ public final class ListOprs implements IVmOperation {
     }
 
     private void get (Vm vm) throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	DataStackElement key = vm.pop ();
 	int sz = dataStack.size ();
 	boolean found = false;
 	for (int i = 0; i < sz; ++i) {
 	    if (found) {
-		dataStack.push (dataStack.get (i));
+		dataStack.add (dataStack.get (i));
 		break;
 	    }
 	    found = Cmpr.equals (key, dataStack.get (i), vm, false);
@@ -156,7 +149,7 @@ public final class ListOprs implements IVmOperation {
     }
 
     private void set (Vm vm) throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
         DataStackElement newVal = vm.pop ();
 	DataStackElement key = vm.pop ();
 	int sz = dataStack.size ();
@@ -164,7 +157,7 @@ public final class ListOprs implements IVmOperation {
 	for (int i = 0; i < sz; ++i) {
             DataStackElement elem =  dataStack.get (i);
             if (found) {
-                elem.set (newVal);
+                dataStack.set (i, newVal);
 		break;
 	    }
             found = Cmpr.equals (key, elem, vm, false);
@@ -173,23 +166,23 @@ public final class ListOprs implements IVmOperation {
     }
 
     private void reverse (Vm vm) throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	Collections.reverse (dataStack);
     }
 
     @SuppressWarnings("unchecked") private void sort (Vm vm) 
 	throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	Collections.sort (dataStack);
     }
 
     @SuppressWarnings("unchecked") private void bsearch (Vm vm) 
 	throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	try {
 	    int idx = Collections.binarySearch ((List) dataStack,
 						(Object) 
-						dataStack.pop ());
+						vm.pop ());
 	    if (idx < 0) {
 		vm.pushInteger (-1);
 	    } else {
@@ -204,13 +197,13 @@ public final class ListOprs implements IVmOperation {
 	throws VmException {
         DataStackElement replaceWith = vm.pop ();
         DataStackElement replaceThis = vm.pop ();
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
+	List<DataStackElement> dataStack = vm.getDataStack ();
 	try {
 	    int sz = dataStack.size ();
             for (int i = 0; i < sz; ++i) {
-                DataStackElement elem = dataStack.elementAt (i);
+                DataStackElement elem = dataStack.get (i);
                 if (elem.compareTo (replaceThis) == 0) {                 
-                    elem.set (replaceWith);
+                    dataStack.set (i, replaceWith);
                     if (!all) break;
                 }
             }
@@ -25,22 +25,60 @@
 
 package org.niue.vm.operation;
 
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import org.niue.Niue;
+import org.niue.vm.ByteCodes;
 import org.niue.vm.IVmOperation;
+import org.niue.vm.ModuleCache;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
 
+// Loads and runs a script file.  Regular files are memory-mapped and 
+// tokenized straight from the mapping.  Pipes, devices and files that
+// cannot be mapped are read as a stream.  The compiled top-level byte
+// codes of a file are kept in the ModuleCache, and loading the file 
+// again replays them while the file is unchanged. 
+
 public final class Load implements IVmOperation {
     
     public void execute (Vm vm) throws VmException {
 	String fileName = vm.popString ();
-	DataInputStream in = null;
+	File file = new File (fileName);
+	ByteCodes cached = ModuleCache.lookup (file);
+	ModuleCache.Recording r = null;
+	if (cached == null) {
+	    r = ModuleCache.record (file);
+	}
+	ModuleCache.Recording outer = vm.setRecording (r);
+	boolean done = false;
+	try {
+	    if (cached != null) {
+		vm.replay (cached);
+	    } else {
+		load (fileName, vm);
+	    }
+	    done = true;
+	} finally {
+	    vm.setRecording (outer);
+	}
+	if (done) {
+	    ModuleCache.store (r);
+	}
+    }
+
+    private void load (String fileName, Vm vm) throws VmException {
+	MappedByteBuffer mapped = map (fileName);
+	if (mapped != null) {
+	    vm.getNiue ().run (vm, mapped, vm.getOutput ());
+	    return;
+	}
+	FileInputStream in = null;
 	try {
-	    in = new DataInputStream
-		(new FileInputStream (fileName));
+	    in = new FileInputStream (fileName);
 	    vm.getNiue ().run (vm, in, vm.getOutput ());
 	} catch (IOException ex) {
 	    throw new VmException (ex.getMessage ());
@@ -54,4 +92,33 @@ public final class Load implements IVmOperation {
 	    }
 	}
     }
+
+    // Maps a regular file into memory.  Returns null if the file 
+    // should be streamed instead.  The mapping stays valid after the
+    // channel is closed. 
+
+    private static MappedByteBuffer map (String fileName) {
+	if (!MMAP_ENABLED) return null;
+	File file = new File (fileName);
+	if (!file.isFile ()) return null;
+	FileInputStream in = null;
+	try {
+	    in = new FileInputStream (file);
+	    FileChannel channel = in.getChannel ();
+	    long size = channel.size ();
+	    if (size > Integer.MAX_VALUE) return null;
+	    return channel.map (FileChannel.MapMode.READ_ONLY, 0, size);
+	} catch (IOException ex) {
+	    return null;
+	} finally {
+	    if (in != null) {
+		try {
+		    in.close ();
+		} catch (IOException ex) { }
+	    }
+	}
+    }
+
+    private static final boolean MMAP_ENABLED = 
+	!"false".equals (System.getProperty ("niue.mmap"));
 }
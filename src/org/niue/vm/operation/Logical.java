@@ -44,6 +44,15 @@ public final class Logical implements IVmOperation {
     public void execute (Vm vm) throws VmException {
 	if (operator == Operator.NEGATE) {
 	    negate (vm);
+	} else if (vm.typeAt (0) == ByteCode.Type.BOOLEAN
+		   && vm.typeAt (1) == ByteCode.Type.BOOLEAN) {
+	    boolean v2 = vm.popBoolean ();
+	    boolean v1 = vm.popBoolean ();
+	    if (operator == Operator.AND) {
+		vm.pushBoolean (v1 && v2);
+	    } else {
+		vm.pushBoolean (v1 || v2);
+	    }
 	} else {
 	    DataStackElement elem2 = vm.pop ();
 	    DataStackElement elem1 = vm.pop ();
@@ -66,6 +75,10 @@ public final class Logical implements IVmOperation {
     }
 
     private void negate (Vm vm) throws VmException {
+	if (vm.typeAt (0) == ByteCode.Type.BOOLEAN) {
+	    vm.pushBoolean (!vm.popBoolean ());
+	    return;
+	}
 	DataStackElement elem1 = vm.pop ();
 	if (elem1.getType () == ByteCode.Type.BOOLEAN) {
 	    boolean v1 = elem1.getElement () == 1 ? true : false;
@@ -28,8 +28,8 @@ package org.niue.vm.operation;
 import org.niue.vm.IVmOperation;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
-import org.niue.vm.DataStackElement;
 import org.niue.vm.ByteCode;
+import org.niue.vm.CodeBlock;
 
 // Implements the words for looping - times, times-by and while. 
 
@@ -64,49 +64,31 @@ public final class Loop implements IVmOperation {
     // the counter being incremented by `incr'.  
 
     private void times (Vm vm) throws VmException {    
-	DataStackElement c = vm.at (0);
-	if (c.getType () != ByteCode.Type.INTEGER) {
+	int t = vm.valueAt (0);
+	if (vm.typeAt (0) != ByteCode.Type.INTEGER) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
 	int blockIndex = 1;
 	int incrementBy = 1;
 	if (type == Type.TIMES_BY)  {
 	    blockIndex = 2;
-	    DataStackElement i = vm.at (1);
-	    if (i.getType () != ByteCode.Type.INTEGER) {
+	    incrementBy = vm.valueAt (1);
+	    if (vm.typeAt (1) != ByteCode.Type.INTEGER) {
 		VmException.raiseUnexpectedValueOnStack ();
 	    }
-	    incrementBy = i.getElement ();
 	}
-	DataStackElement block = vm.at (blockIndex);
-	ByteCode.Type tp = block.getType ();
-	if (tp != ByteCode.Type.VM && tp != ByteCode.Type.STRING) {
+	int id = vm.valueAt (blockIndex);
+	ByteCode.Type tp = vm.typeAt (blockIndex);
+	CodeBlock block = vm.blockAt (blockIndex);
+	if (tp != ByteCode.Type.BLOCK && tp != ByteCode.Type.STRING) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
 
-	vm.pop ();
-	vm.pop ();
-	if (type == Loop.Type.TIMES_BY) vm.pop ();
-
-	int t = c.getElement ();
-	int id = block.getElement ();
-	if (tp == ByteCode.Type.VM) {
-	    try {
-		for (int i = 0; i < t; i += incrementBy) {
-		    vm.pushInteger (i);
-		    vm.runChildVm (id, false);	
-		}
-	    } catch (VmException ex) {
-		throw ex;
-	    } finally {
-		vm.discardChildVm (id);
-	    }
-	} else {
-	    for (int i = 0; i < t; i += incrementBy) {
-		vm.pushInteger (i);
-		vm.executeWord (id);		
-	    }
-	}
+	vm.drop ();
+	vm.drop ();
+	if (type == Loop.Type.TIMES_BY) vm.drop ();
+
+	new Times (block, id, t, incrementBy).execute (vm);
     }
 
     // The semantics of the `while' loop is:
@@ -117,52 +99,112 @@ public final class Loop implements IVmOperation {
     // stack. 
 
     private void whileLoop (Vm vm) throws VmException {
-	DataStackElement block = vm.at (0);
-	ByteCode.Type type = block.getType ();
-	if (type != ByteCode.Type.VM && type != ByteCode.Type.STRING) {
+	int id = vm.valueAt (0);
+	ByteCode.Type type = vm.typeAt (0);
+	CodeBlock block = vm.blockAt (0);
+	if (type != ByteCode.Type.BLOCK && type != ByteCode.Type.STRING) {
 	    VmException.raiseUnexpectedValueOnStack ();
 	}
-	DataStackElement cond = vm.at (1);
-	boolean exec = shouldExecute (cond, vm);
-	vm.pop ();
-	if (exec) {
-	    int id = block.getElement ();
-	    if (type == ByteCode.Type.VM) {
-		try {
-		    while (exec) {
-			vm.runChildVm (id, false);
-			exec = shouldExecute (cond, vm);
-		    }
-		} catch (VmException ex) {
-		    throw ex;
-		} finally {
-		    vm.discardChildVm (id);
-		}
-	    } else {
-		while (exec) {
-		    vm.executeWord (id);
-		    exec = shouldExecute (cond, vm);
-		}
-	    }
+	int condId = vm.valueAt (1);
+	ByteCode.Type condType = vm.typeAt (1);
+	CodeBlock condBlock = vm.blockAt (1);
+	if (condType != ByteCode.Type.BLOCK 
+	    && condType != ByteCode.Type.STRING) {
+	    VmException.raiseUnexpectedValueOnStack ();
 	}
-	vm.pop ();
-	if (cond.getType () == ByteCode.Type.VM) {
-	    vm.discardChildVm (cond.getElement ());
-	}	
+	new While (block, id, condBlock, condId).execute (vm);
     }
 
-    private boolean shouldExecute (DataStackElement c, Vm vm) 
-	throws VmException {
-        ByteCode.Type t = c.getType ();
-	if (t == ByteCode.Type.VM) {
-	    vm.runChildVm (c.getElement (), false);
-	} else if (t == ByteCode.Type.STRING) {
-	    vm.executeWord (c.getElement ());
+    // Runs a block or a word on the interpreter loop, followed by 
+    // `then'. 
+
+    private static void call (Vm vm, CodeBlock block, int id, 
+			      IVmOperation then) throws VmException {
+	if (block != null) {
+	    vm.call (block, then);
 	} else {
-	    VmException.raiseUnexpectedValueOnStack ();
+	    vm.callWord (id, then);
 	}
-	return vm.popBoolean ();	
+    }
+
+    // The state of a `times' loop.  Each iteration is scheduled on
+    // the interpreter loop, with the state as its continuation. 
+
+    private static final class Times implements IVmOperation {
+	Times (CodeBlock block, int id, int count, int incrementBy) {
+	    this.block = block;
+	    this.id = id;
+	    this.count = count;
+	    this.incrementBy = incrementBy;
+	}
+
+	public void execute (Vm vm) throws VmException {
+	    if (i < count) {
+		vm.pushInteger (i);
+		i += incrementBy;
+		call (vm, block, id, this);
+	    }
+	}
+
+	private final CodeBlock block;
+	private final int id;
+	private final int count;
+	private final int incrementBy;
+	private int i = 0;
+    }
+
+    // The state of a `while' loop.  The condition and the body are
+    // scheduled in turns on the interpreter loop.  The body and the 
+    // condition stay on the stack while the loop runs. 
+
+    private static final class While implements IVmOperation {
+	While (CodeBlock block, int id, CodeBlock condBlock, int condId) {
+	    this.block = block;
+	    this.id = id;
+	    this.condBlock = condBlock;
+	    this.condId = condId;
+	}
+
+	public void execute (Vm vm) throws VmException {
+	    switch (state) {
+	    case START:
+		state = State.FIRST_TEST;
+		call (vm, condBlock, condId, this);
+		break;
+	    case FIRST_TEST:
+		{
+		    boolean exec = vm.popBoolean ();
+		    vm.drop ();
+		    loop (vm, exec);
+		    break;
+		}
+	    case BODY_DONE:
+		state = State.TEST;
+		call (vm, condBlock, condId, this);
+		break;
+	    case TEST:
+		loop (vm, vm.popBoolean ());
+		break;
+	    }
+	}
+
+	private void loop (Vm vm, boolean exec) throws VmException {
+	    if (exec) {
+		state = State.BODY_DONE;
+		call (vm, block, id, this);
+	    } else {
+		vm.drop ();
+	    }
+	}
+
+	private final CodeBlock block;
+	private final int id;
+	private final CodeBlock condBlock;
+	private final int condId;
+	private State state = State.START;
+
+	private enum State { START, FIRST_TEST, BODY_DONE, TEST };
     }
 
     private Type type;
-}
\ No newline at end of file
+}
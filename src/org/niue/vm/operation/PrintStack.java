@@ -25,7 +25,7 @@
 
 package org.niue.vm.operation;
 
-import java.util.Stack;
+import java.util.List;
 import org.niue.vm.IVmOperation;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
@@ -36,7 +36,7 @@ import org.niue.vm.DataStackElement;
 
 public final class PrintStack implements IVmOperation {
     public void execute (Vm vm) throws VmException {
-	Stack<DataStackElement> dataStack = vm.getDataStack ();	
+	List<DataStackElement> dataStack = vm.getDataStack ();	
 	StringBuilder s = new StringBuilder ();
 	int len = dataStack.size ();
 	if (len == 0) {
@@ -44,7 +44,7 @@ public final class PrintStack implements IVmOperation {
 	    return;
 	}
 	for (int i = 0; i < len; ++i) {
-	    DataStackElement elem = dataStack.elementAt (i);	    
+	    DataStackElement elem = dataStack.get (i);	    
 	    s.append (vm.getDataStackElementValue (elem)).append (' ');
 	}
 	vm.write (s.toString ());
@@ -0,0 +1,182 @@
+// Copyright 2010 Vijay Mathew Pandyalakal. All rights reserved.
+
+// Redistribution and use in source and binary forms, with or 
+// without modification, are permitted provided that the following 
+// conditions are met:
+
+//    1. Redistributions of source code must retain the above copyright 
+//       notice, this list of conditions and the following disclaimer.
+
+//    2. Redistributions in binary form must reproduce the above copyright 
+//       notice, this list of conditions and the following disclaimer in the 
+//       documentation and/or other materials provided with the distribution.
+
+// THIS SOFTWARE IS PROVIDED BY VIJAY MATHEW PANDYALAKAL ``AS IS'' AND ANY 
+// EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+// WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+// DISCLAIMED. IN NO EVENT SHALL VIJAY MATHEW PANDYALAKAL OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.niue.vm.operation;
+
+import org.niue.vm.IVmOperation;
+import org.niue.vm.Vm;
+import org.niue.vm.VmException;
+import org.niue.vm.ByteCode;
+
+// Specialized variants of the arithmetic and comparison operations. 
+// The first time a `+' or `<' byte code in a block is executed, the
+// virtual machine looks at the types of the operands and quickens 
+// the byte code to the variant for those types, like INT_ADD or 
+// DOUBLE_LT.  Each variant checks that the operands still have the
+// expected types.  If they do not, the variant does nothing and the
+// byte code goes back to the generic operation for good.  
+// See Vm.executeOperation (). 
+
+public enum Quick {
+    GENERIC, 
+    INT_ADD, INT_SUB, INT_MULT, INT_DIV, INT_MOD, 
+    INT_EQ, INT_LT, INT_GT, INT_LT_EQ, INT_GT_EQ,
+    DOUBLE_ADD, DOUBLE_SUB, DOUBLE_MULT, DOUBLE_DIV, DOUBLE_MOD, 
+    DOUBLE_LT, DOUBLE_GT, DOUBLE_LT_EQ, DOUBLE_GT_EQ;
+
+    // Returns the variant of `opr' for the operands on top of the
+    // stack, or GENERIC if there is none. 
+
+    public static Quick select (IVmOperation opr, Vm vm) {
+	ByteCode.Type type = vm.typeAt (0);
+	if (type != vm.typeAt (1)) {
+	    return GENERIC;
+	}
+	if (type == ByteCode.Type.INTEGER) {
+	    if (opr instanceof Arith) {
+		return INT_ARITH[((Arith) opr).getOperator ().ordinal ()];
+	    } else if (opr instanceof Cmpr) {
+		return INT_CMPR[((Cmpr) opr).getOperator ().ordinal ()];
+	    }
+	} else if (type == ByteCode.Type.DOUBLE) {
+	    if (opr instanceof Arith) {
+		return DOUBLE_ARITH[((Arith) opr).getOperator ().ordinal ()];
+	    } else if (opr instanceof Cmpr) {
+		return DOUBLE_CMPR[((Cmpr) opr).getOperator ().ordinal ()];
+	    }
+	}
+	return GENERIC;
+    }
+
+    // Executes the variant.  Returns false without touching the stack
+    // if the operands are not of the expected types. 
+
+    public boolean execute (Vm vm) throws VmException {
+	switch (this) {
+	case GENERIC:
+	    return false;
+	case INT_ADD: case INT_SUB: case INT_MULT: case INT_DIV: 
+	case INT_MOD: case INT_EQ: case INT_LT: case INT_GT: 
+	case INT_LT_EQ: case INT_GT_EQ:
+	    if (vm.typeAt (0) != ByteCode.Type.INTEGER
+		|| vm.typeAt (1) != ByteCode.Type.INTEGER) {
+		return false;
+	    }
+	    executeInts (vm);
+	    return true;
+	default:
+	    if (vm.typeAt (0) != ByteCode.Type.DOUBLE
+		|| vm.typeAt (1) != ByteCode.Type.DOUBLE) {
+		return false;
+	    }
+	    executeDoubles (vm);
+	    return true;
+	}
+    }
+
+    private void executeInts (Vm vm) throws VmException {
+	int i2 = vm.popInteger ();
+	int i1 = vm.popInteger ();
+	// Computed in 64 bits so that an overflow is promoted to a LONG. 
+	long l1 = i1;
+	switch (this) {
+	case INT_ADD:
+	    vm.pushLong (l1 + i2);
+	    break;
+	case INT_SUB:
+	    vm.pushLong (l1 - i2);
+	    break;
+	case INT_MULT:
+	    vm.pushLong (l1 * i2);
+	    break;
+	case INT_DIV:
+	    vm.pushLong (l1 / i2);
+	    break;
+	case INT_MOD:
+	    vm.pushInteger (i1 % i2);
+	    break;
+	case INT_EQ:
+	    vm.pushBoolean (i1 == i2);
+	    break;
+	case INT_LT:
+	    vm.pushBoolean (i1 < i2);
+	    break;
+	case INT_GT:
+	    vm.pushBoolean (i1 > i2);
+	    break;
+	case INT_LT_EQ:
+	    vm.pushBoolean (i1 <= i2);
+	    break;
+	case INT_GT_EQ:
+	    vm.pushBoolean (i1 >= i2);
+	    break;
+	}
+    }
+
+    private void executeDoubles (Vm vm) throws VmException {
+	double d2 = vm.popDoubleValue ();
+	double d1 = vm.popDoubleValue ();
+	switch (this) {
+	case DOUBLE_ADD:
+	    vm.pushDouble (d1 + d2);
+	    break;
+	case DOUBLE_SUB:
+	    vm.pushDouble (d1 - d2);
+	    break;
+	case DOUBLE_MULT:
+	    vm.pushDouble (d1 * d2);
+	    break;
+	case DOUBLE_DIV:
+	    vm.pushDouble (d1 / d2);
+	    break;
+	case DOUBLE_MOD:
+	    vm.pushDouble (d1 % d2);
+	    break;
+	case DOUBLE_LT:
+	    vm.pushBoolean (Double.compare (d1, d2) < 0);
+	    break;
+	case DOUBLE_GT:
+	    vm.pushBoolean (Double.compare (d1, d2) > 0);
+	    break;
+	case DOUBLE_LT_EQ:
+	    vm.pushBoolean (Double.compare (d1, d2) <= 0);
+	    break;
+	case DOUBLE_GT_EQ:
+	    vm.pushBoolean (Double.compare (d1, d2) >= 0);
+	    break;
+	}
+    }
+
+    // Variants indexed by Arith.Operator and Cmpr.Operator ordinals. 
+
+    private static final Quick[] INT_ARITH = 
+    { INT_ADD, INT_SUB, INT_MULT, INT_DIV, INT_MOD, GENERIC };
+    private static final Quick[] INT_CMPR = 
+    { GENERIC, INT_EQ, INT_LT, INT_GT, INT_LT_EQ, INT_GT_EQ };
+    private static final Quick[] DOUBLE_ARITH = 
+    { DOUBLE_ADD, DOUBLE_SUB, DOUBLE_MULT, DOUBLE_DIV, DOUBLE_MOD, GENERIC };
+    private static final Quick[] DOUBLE_CMPR = 
+    { GENERIC, GENERIC, DOUBLE_LT, DOUBLE_GT, DOUBLE_LT_EQ, DOUBLE_GT_EQ };
+}
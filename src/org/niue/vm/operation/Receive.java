@@ -25,28 +25,19 @@
 
 package org.niue.vm.operation;
 
-import java.util.Stack;
 import org.niue.vm.IVmOperation;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
-import org.niue.vm.DataStackElement;
 
 // Makes the virtual machine wait till a given number of
 // values are available on its data stack.  Used for inter-process
-// communication. 
+// communication.  The process sleeps until a sender delivers the 
+// values, without holding a thread when it is run by the process 
+// scheduler.  See Vm.receiveOrSuspend (). 
 
 public final class Receive implements IVmOperation {
     
     public void execute (Vm vm) throws VmException {
-	int count = vm.popInteger ();
-	Stack<DataStackElement> dataStack = vm.getDataStack ();
-	while (dataStack.size () < count) {
-	    try {
-		Thread.sleep (10);
-	    } catch (InterruptedException ex) {
-		throw new VmException ("Error while waiting for " +
-				       "data on stack");
-	    }
-	}
+	vm.receiveOrSuspend (vm.popInteger ());
     }
 }
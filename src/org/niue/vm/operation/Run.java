@@ -33,14 +33,28 @@ import org.niue.vm.ByteCode;
 
 public final class Run implements IVmOperation {
     
+    // Runs the block or word on top of the stack.  The block is
+    // scheduled on the interpreter loop, so a `!' at the end of a 
+    // block is a tail call. 
+
     public void execute (Vm vm) throws VmException {
-	run (vm, vm.pop (), true);
+	DataStackElement elem = vm.pop ();
+	ByteCode.Type type = elem.getType ();
+	if (type == ByteCode.Type.BLOCK) {
+	    vm.call (elem.getBlock (), null);
+	} else if (type == ByteCode.Type.STRING) {
+	    vm.callWord (elem.getElement (), null);
+	} else {
+	    VmException.raiseUnexpectedValueOnStack ();
+	}
     }
 
-    void run (Vm vm, DataStackElement elem, boolean discard) throws VmException {
+    // Runs the block or word `elem' to completion. 
+
+    void run (Vm vm, DataStackElement elem) throws VmException {
 	ByteCode.Type type = elem.getType ();
-	if (type == ByteCode.Type.VM) {
-	    vm.runChildVm (elem.getElement (), discard);
+	if (type == ByteCode.Type.BLOCK) {
+	    vm.runBlock (elem.getBlock ());
 	} else if (type == ByteCode.Type.STRING) {
 	    vm.executeWord (elem.getElement ());
 	} else {
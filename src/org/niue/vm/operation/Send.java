@@ -31,16 +31,53 @@ import org.niue.vm.VmException;
 import org.niue.vm.DataStackElement;
 
 // Pushes a specified number of values from the local stack a proces.
+// `send' waits while the mailbox of the process is full.  `try-send'
+// does not wait, and pushes true if the values were sent.  If the 
+// mailbox was full or the process has exited, the values, their count
+// and the process ID are left on the stack, followed by false, so that
+// the send can be tried again.  See Vm.setMailboxCapacity (). 
 
 public final class Send implements IVmOperation {
+
+    public enum Type { SEND, TRY_SEND };
+
+    public Send (Type type) {
+	this.type = type;
+    }
     
     public void execute (Vm vm) throws VmException {
 	int procId = vm.popInteger ();
-        Vm targetVm = vm.getNiue ().getProcess (procId);
         int numValues = vm.popInteger ();
-        for (int i = 0; i < numValues; ++i) {
-            DataStackElement elem = vm.pop ();
-            targetVm.syncedPush (elem);
-        }
+	boolean sent = false;
+	try {
+	    Vm targetVm = find (vm, procId);
+	    if (targetVm != null) {
+		sent = vm.send (targetVm, numValues, type == Type.SEND);
+	    }
+	} finally {
+	    if (!sent) {
+		vm.pushInteger (numValues);
+		vm.pushInteger (procId);
+	    }
+	}
+	if (type == Type.TRY_SEND) {
+	    vm.pushBoolean (sent);
+	}
     }
+
+    // Returns the process `procId'.  If it has exited, `send' raises
+    // an error and `try-send' gets null. 
+
+    private Vm find (Vm vm, int procId) throws VmException {
+	try {
+	    return vm.getNiue ().getProcess (procId);
+	} catch (VmException ex) {
+	    if (type == Type.SEND) {
+		throw ex;
+	    }
+	    return null;
+	}
+    }
+
+    private Type type;
 }
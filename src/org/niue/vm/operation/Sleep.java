@@ -25,19 +25,40 @@
 
 package org.niue.vm.operation;
 
+import java.util.concurrent.ForkJoinPool;
 import org.niue.vm.IVmOperation;
 import org.niue.vm.Vm;
 import org.niue.vm.VmException;
 import org.niue.vm.DataStackElement;
 import org.niue.vm.ByteCode;
 
+// Suspends the process for a given number of milliseconds.  The
+// process is at a safe point while it sleeps, and the sleep is made 
+// known to the process scheduler.  See Vm.block (). 
+
 public final class Sleep implements IVmOperation {
     
     public void execute (Vm vm) throws VmException {
 	int millis = vm.popInteger ();
+	final long until = System.currentTimeMillis () + millis;
         try {
-            Thread.sleep (millis);
+	    vm.block (new ForkJoinPool.ManagedBlocker () {
+		    public boolean block () throws InterruptedException {
+			long left = until - System.currentTimeMillis ();
+			if (left > 0) {
+			    Thread.sleep (left);
+			}
+			return true;
+		    }
+
+		    public boolean isReleasable () {
+			return (System.currentTimeMillis () >= until);
+		    }
+		});
         } catch (InterruptedException ex) {
+	    // The process is being shut down.  Keep the flag, so that 
+	    // a blocking call that follows does not wait either. 
+	    Thread.currentThread ().interrupt ();
         }
     }
 }
@@ -38,10 +38,10 @@ public final class Spawn implements IVmOperation {
     
     public void execute (Vm vm) throws VmException {
 	DataStackElement elem = vm.pop ();
-	if (elem.getType () != ByteCode.Type.VM) {
+	if (elem.getType () != ByteCode.Type.BLOCK) {
             VmException.raiseUnexpectedValueOnStack ();
         } else {
-	    vm.spawn (elem.getElement ());        
+	    vm.spawn (elem.getBlock ());        
 	}
     }
 }
@@ -102,86 +102,67 @@ public final class StackManip implements IVmOperation {
 	}
     }
 
-    // Stack manipulation methods make separate at () and pop () 
-    // calls to ensure that the stack will be in an unmodified state
-    // even if there is an underflow exception.
+    // Stack manipulation methods work on the slots of the data 
+    // stack in place, through exchange () and pick ().  Indexes are
+    // validated before the stack is modified, so the stack will be 
+    // in an unmodified state even if there is an underflow exception.
 
     static void len (Vm vm) {
         vm.pushInteger (vm.getDataStack ().size ());
     }
 
     void swap (Vm vm) throws VmException {
-	DataStackElement elem2 = vm.at (0);
-	DataStackElement elem1 = vm.at (1);
-	vm.pop ();
-	vm.pop ();
-	vm.push (elem2);
-	vm.push (elem1);
+	vm.exchange (0, 1);
     }
 
     static void swap_at (Vm vm) throws VmException {
 	int j = vm.popInteger ();
 	int i = vm.popInteger ();
-        DataStackElement elem1 = vm.at (j);
-        DataStackElement elem2 = vm.at (i);
-        vm.set (i, elem1);
-        vm.set (j, elem2);
+        vm.exchange (i, j);
     }
 
     static void dup (Vm vm) throws VmException {
-	DataStackElement elem1 = vm.peek ();
-	vm.push (elem1);
+	if (vm.typeAt (0) == null) {
+	    throw new VmException (Vm.EMPTY_STACK_MSG);
+	}
+	vm.pick (0);
     }
     
     void over (Vm vm) throws VmException {
-	DataStackElement elem2 = vm.at (1);
-	vm.push (elem2);
+	vm.pick (1);
     }
 
     void rot (Vm vm) throws VmException {
-	DataStackElement elem1 = vm.at (2);
-	DataStackElement elem2 = vm.at (1);
-	DataStackElement elem3 = vm.at (0);
-	vm.pop ();
-	vm.pop ();
-	vm.pop ();
-	vm.push (elem2);
-	vm.push (elem3);
-	vm.push (elem1);
+	vm.valueAt (2);
+	vm.exchange (2, 1);
+	vm.exchange (1, 0);
     }
 
     void drop (Vm vm) throws VmException {
-	vm.pop ();
+	vm.drop ();
     }
 
     void twoSwap (Vm vm) throws VmException {
-	DataStackElement elem1p1 = vm.at (3);
-	DataStackElement elem2p1 = vm.at (2);
-	DataStackElement elem1p2 = vm.at (1);
-	DataStackElement elem2p2 = vm.at (0);
-	vm.pop (); vm.pop ();
-	vm.pop (); vm.pop ();
-	vm.push (elem1p2); vm.push (elem2p2);
-	vm.push (elem1p1); vm.push (elem2p1);
+	vm.valueAt (3);
+	vm.exchange (3, 1);
+	vm.exchange (2, 0);
     }
 
     void twoDup (Vm vm) throws VmException {
-	DataStackElement elem1 = vm.at (1);
-	DataStackElement elem2 = vm.at (0);
-	vm.push (elem1); 
-	vm.push (elem2);
+	vm.valueAt (1);
+	vm.pick (1); 
+	vm.pick (1);
     }
 
     void twoOver (Vm vm) throws VmException {
-	DataStackElement elem1 = vm.at (2);
-	DataStackElement elem2 = vm.at (3);
-	vm.push (elem2); 
-	vm.push (elem1);
+	vm.valueAt (3);
+	vm.pick (3); 
+	vm.pick (3);
     }
 
     void twoDrop (Vm vm) throws VmException {
-	vm.pop ();
-	vm.pop ();
+	vm.drop ();
+	vm.drop ();
     }
 
     void clear (Vm vm) {
@@ -189,6 +170,9 @@ public final class StackManip implements IVmOperation {
     }
 
     void superPushTo (Vm vm, boolean all) throws VmException {        
+        if (vm.pushToOuterStack (all)) {
+            return;
+        }
         Vm parentVm = getParentVm (vm);
         if (all) {
             pushAllTo (vm, parentVm);
@@ -198,6 +182,9 @@ public final class StackManip implements IVmOperation {
     }
 
     void superPopFrom (Vm vm, boolean all) throws VmException {        
+        if (vm.popFromOuterStack (all)) {
+            return;
+        }
         Vm parentVm = getParentVm (vm);
         if (all) {
             popAllFrom (vm, parentVm);
@@ -229,15 +216,12 @@ public final class StackManip implements IVmOperation {
         while (popFrom (vm, srcVm)) ;
     }
 
+    // The data stack of the parent belongs to another thread, so the
+    // values are taken from the copy made when `vm' was spawned. 
+
     private boolean popFrom (Vm vm, Vm srcVm) {
         try {
-            boolean synced = (srcVm.isSpawned () || vm.isSpawned ());
-            DataStackElement elem = srcVm.localPop (synced);
-            if (synced) {
-                vm.syncedPush (elem);
-            } else {
-                vm.push (elem);
-            }
+            vm.push (vm.parentPop ());
             return true;
         } catch (VmException ex) {
             return false;